@@ -6,6 +6,10 @@ import com.sandata.core.config.TestContext;
 import com.sandata.core.config.TestType;
 import com.sandata.core.report.ExtentManager;
 import com.sandata.core.report.ExtentTestManager;
+import com.sandata.core.report.FailureArtifactStore;
+import com.sandata.core.report.ReportEventPipeline;
+import com.sandata.core.report.ReportLevel;
+import com.sandata.core.report.StepTemplate;
 import com.sandata.core.report.TestListener;
 import com.sandata.qtest.QTest;
 import com.sandata.qtest.QTestAPI;
@@ -28,6 +32,7 @@ import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -109,10 +114,10 @@ public class BaseTest {
 
     @BeforeClass(alwaysRun = true)
     public void beforeClass(ITestContext context) {
-        LOGGER.info("DefaultENVID is " + System.getProperty(CONS_DEFAULT_ENVIRONMENT_ID));
+        logInfo("DefaultENVID is {}", System.getProperty(CONS_DEFAULT_ENVIRONMENT_ID));
         LOGGER.info("------------------ @BeforeClass fired------------------------");
         String testCaseName = this.getClass().getSimpleName();
-        LOGGER.info("---- Starting TC - " + testCaseName);
+        logInfo("---- Starting TC - {}", testCaseName);
 
         //Pattern p = Pattern.compile("([A-Z0-9]*)_(TC_\\d{1,6})"); -- For keep track
         Pattern p = Pattern.compile("([A-Z]*_|^)([A-Z0-9]*)_.*?_((TC_|US_)\\d{1,6})?");
@@ -125,7 +130,7 @@ public class BaseTest {
             dataFile = dataFileMatcher.find() ? dataFileMatcher.group(0) : "";
             projectName = m.group(2);
             testcaseID = tcIDMatcher.find() ? tcIDMatcher.group(0) : "";
-            LOGGER.info("\nProject Name: " + projectName + ", testCaseID: " + testcaseID + ", testData: " + dataFile);
+            logInfo("\nProject Name: {}, testCaseID: {}, testData: {}", projectName, testcaseID, dataFile);
         } else {
             logError(String.format("Cannot find the project name and test case id for test case: %s"
                     , testCaseName));
@@ -137,7 +142,7 @@ public class BaseTest {
             WebDriver driver = getTestConfig().getDriver();
             String url = getTestConfig().getEnvironment().getApplication_URL();
             driver.get(url);
-            LOGGER.info("Application URL " + url);
+            logInfo("Application URL {}", url);
         }
         baseObj = new Wrapper();
     }
@@ -164,7 +169,7 @@ public class BaseTest {
         String envID = testConfig.getTestData().getRunningEnvID(testConfig.getEnvStage());
         Environment environment = JsonReader.loadEnvironment(testConfig.getEnvStage(), envID);
         System.setProperty(CONS_DEFAULT_ENVIRONMENT_ID, envID);
-        LOGGER.info("Running on environment stage: " + testConfig.getEnvStage());
+        logInfo("Running on environment stage: {}", testConfig.getEnvStage());
 
         if (environment != null) {
             testConfig.setEnvironment(environment);
@@ -186,9 +191,8 @@ public class BaseTest {
         if (testData.length > 0) {
             testName = testName + " [" + testData[0] + "]";
         }
-        LOGGER.info("Running test method" + testName);
-        test = ExtentTestManager.startTest(testName, testMethod.description());
-        test.assignCategory(testMethod.groups());
+        logInfo("Running test method {}", testName);
+        test = ExtentTestManager.startTest(testName, testMethod.description(), testMethod.groups());
 
         if (isQTestEnable())
             loadAssociatedQTestKeysFromTestMethod(testContext, method);
@@ -266,9 +270,9 @@ public class BaseTest {
             LOGGER.info("Closing Web browser successfully");
         }
         TestContext.remove();
-        LOGGER.info("Writing to HTML report");
-        ExtentManager.getReporter().flush();
         if (isQTestEnable()) {
+            LOGGER.info("Writing to HTML report");
+            ReportEventPipeline.getInstance().drain();
             LOGGER.info("Upload result to qTest server");
             for (QTestCaseModel qTestCaseModel : testCases.values()) {
                 qTestCaseModel.setReportFilePath(ExtentManager.reportFilePath);
@@ -285,13 +289,16 @@ public class BaseTest {
     @AfterSuite(alwaysRun = true)
     protected void afterSuite() {
         LOGGER.info("------------------	@AfterSuite fired -----------------------");
+        if (FailureArtifactStore.isEnabled()) {
+            FailureArtifactStore.getInstance().awaitIdle();
+        }
         LOGGER.info("Writing to HTML report");
-        ExtentManager.getReporter().flush();
+        ReportEventPipeline.getInstance().drain();
+        ExtentManager.renderReport();
         LOGGER.info("------ Done");
         try {
             LOGGER.info("Copy to AutomationReport.html");
-            FileUtils.copyFile(new File(ExtentManager.reportFilePath),
-                    new File(ExtentManager.windowsPath + File.separator + ExtentManager.reportFileName + ".html"));
+            FileUtils.copyFile(new File(ExtentManager.reportFilePath), new File(ExtentManager.getLatestReportPath()));
             LOGGER.info("--- Done");
         } catch (IOException e) {
             LOGGER.error(e.getMessage());
@@ -299,23 +306,78 @@ public class BaseTest {
     }
 
     public void logError(String message) {
-        test.log(Status.ERROR, message);
+        if (ReportLevel.isEnabled(Status.ERROR)) {
+            ReportEventPipeline.getInstance().log(test, Status.ERROR, message);
+        }
         LOGGER.error(message);
         Assert.fail(message);
     }
 
     public void logPass(String message) {
-        test.log(Status.PASS, message);
+        if (ReportLevel.isEnabled(Status.PASS)) {
+            ReportEventPipeline.getInstance().log(test, Status.PASS, message);
+        }
         LOGGER.info(message);
     }
 
     public void logException(String message, Exception exp) {
-        test.log(Status.ERROR, exp.getMessage());
+        if (ReportLevel.isEnabled(Status.ERROR)) {
+            ReportEventPipeline.getInstance().log(test, Status.ERROR, exp.getMessage());
+        }
         logError(message);
     }
 
     public void logStepInfo(String info) {
-        test.log(Status.INFO, info);
+        if (ReportLevel.isEnabled(Status.INFO)) {
+            ReportEventPipeline.getInstance().log(test, Status.INFO, info);
+        }
+    }
+
+    /**
+     * @param pattern Step pattern with a {@code {}} placeholder, formatted only when INFO steps are reported
+     * @param arg     Placeholder value
+     */
+    public void logStepInfo(String pattern, Object arg) {
+        if (ReportLevel.isEnabled(Status.INFO)) {
+            ReportEventPipeline.getInstance().log(test, Status.INFO, StepTemplate.of(pattern).format(arg));
+        }
+    }
+
+    public void logStepInfo(String pattern, Object arg1, Object arg2) {
+        if (ReportLevel.isEnabled(Status.INFO)) {
+            ReportEventPipeline.getInstance().log(test, Status.INFO, StepTemplate.of(pattern).format(arg1, arg2));
+        }
+    }
+
+    public void logStepInfo(String pattern, Object... args) {
+        if (ReportLevel.isEnabled(Status.INFO)) {
+            ReportEventPipeline.getInstance().log(test, Status.INFO, StepTemplate.of(pattern).format(args));
+        }
+    }
+
+    /**
+     * @param info Step built only when INFO steps are reported
+     */
+    public void logStepInfo(Supplier<String> info) {
+        if (ReportLevel.isEnabled(Status.INFO)) {
+            ReportEventPipeline.getInstance().log(test, Status.INFO, info.get());
+        }
+    }
+
+    /**
+     * @param level Step level
+     * @param info  Step built only when the level is reported
+     */
+    public void logStep(Status level, Supplier<String> info) {
+        if (ReportLevel.isEnabled(level)) {
+            ReportEventPipeline.getInstance().log(test, level, info.get());
+        }
+    }
+
+    private static void logInfo(String pattern, Object... args) {
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info(StepTemplate.of(pattern).format(args));
+        }
     }
 
     public void setUseCustomProfile(boolean useCustomProfile) {
@@ -2,7 +2,13 @@ package core;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.testng.annotations.AfterSuite;
 import org.testng.annotations.BeforeClass;
+import utils.RabbitMQ;
+import utils.SftpDownloadCache;
+import utils.SftpMetadataCache;
+
+import java.io.IOException;
 
 public class Base {
     public static final Logger LOGGER = LogManager.getLogger();
@@ -11,4 +17,18 @@ public class Base {
     public void tearUp() {
         LOGGER.info("Starting to perform test");
     }
+
+    @AfterSuite(alwaysRun = true)
+    public void tearDownSuite() {
+        LOGGER.info("RabbitMQ pool statistics: {}", RabbitMQ.getPoolStatistics());
+        RabbitMQ.close();
+        LOGGER.info("SFTP metadata cache statistics: {}", SftpMetadataCache.getInstance().getStatistics());
+        if (SftpDownloadCache.isEnabled()) {
+            try {
+                LOGGER.info("SFTP download cache statistics: {}", SftpDownloadCache.getInstance().getStatistics());
+            } catch (IOException e) {
+                LOGGER.warn("SFTP download cache is not available: {}", e.getMessage());
+            }
+        }
+    }
 }
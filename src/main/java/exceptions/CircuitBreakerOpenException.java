@@ -0,0 +1,15 @@
+package exceptions;
+
+/**
+ * Exception when a call is refused because too many calls to the same service failed recently
+ */
+public class CircuitBreakerOpenException extends RuntimeException {
+
+    public CircuitBreakerOpenException(String s) {
+        super(s);
+    }
+
+    public CircuitBreakerOpenException(String s, Throwable throwable) {
+        super(s, throwable);
+    }
+}
@@ -8,16 +8,25 @@ import org.apache.log4j.Logger;
 import org.testng.ITestContext;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class ExtentManager {
     private static final Logger LOGGER = Logger.getLogger(ExtentManager.class);
+    private static final String BACKEND_VARIABLE = "report.backend";
 
     public static String reportFileName = "Automation_Report";
     public static String windowsPath = System.getProperty("user.dir") + File.separator + "TestResult";
     public static String reportFilePath;
+    public static String resultLogPath;
     private static volatile ExtentReports extent = null;
+    private static volatile ReportSink sink;
+    private static volatile Boolean jsonlBackend;
+    private static final ReportSink CURRENT_SINK = new CurrentSink();
 
     private ExtentManager(){}
 
@@ -43,7 +52,31 @@ public class ExtentManager {
         String testName = context.getCurrentXmlTest().getName().replaceAll(" ","");
         String reportName = suiteName +"_" + testName;
         LOGGER.info(String.format("Running the test suite: %s, test name %s", suiteName, testName));
-        ExtentHtmlReporter htmlReport = new ExtentHtmlReporter(getFileLocationBasedOnPlatform(reportName));
+        String reportPath = getFileLocationBasedOnPlatform(reportName);
+        if (isJsonlBackend()) {
+            // Tests are only handles: the result log holds the run and the HTML is rendered from it in afterSuite
+            ExtentTestManager.extent = extent;
+            Map<String, String> runInfo = new LinkedHashMap<>();
+            runInfo.put("name", reportName);
+            runInfo.put("suite", suiteName);
+            runInfo.put("test", testName);
+            runInfo.put("environment", System.getProperty("environment"));
+            runInfo.put("envId", System.getProperty("DefaultENVID"));
+            if (sink instanceof JsonlReportSink && ((JsonlReportSink) sink).isOpen()) {
+                // The pipeline already writes to this log, a second one would never be rendered
+                LOGGER.warn("Result log " + resultLogPath + " was opened before the suite started, the suite is recorded in it");
+                JsonlReportSink openSink = (JsonlReportSink) sink;
+                ReportEventPipeline.getInstance().applyToModel(() -> openSink.writeRun(withShardInfo(runInfo)));
+                return extent;
+            }
+            sink = openResultLog(reportPath, runInfo);
+            return extent;
+        }
+        if (ReportShard.isSharded()) {
+            extent.setSystemInfo("Shard", ReportShard.getShardId());
+            extent.setSystemInfo("Node", ReportShard.getNodeName());
+        }
+        ExtentHtmlReporter htmlReport = new ExtentHtmlReporter(reportPath);
 
         htmlReport.config().setTheme(Theme.DARK);
         htmlReport.config().setDocumentTitle(reportName);
@@ -56,6 +89,119 @@ public class ExtentManager {
 
         return extent;
     }
+    /**
+     * @return True when {@code report.backend=jsonl}: events go to a JSON lines result log instead of the Extent model.
+     * It is the default when {@code report.shard} is set, the logs of the shards can then be merged.
+     */
+    public static boolean isJsonlBackend() {
+        Boolean jsonl = jsonlBackend;
+        if (jsonl == null) {
+            synchronized (ExtentManager.class) {
+                if (jsonlBackend == null) {
+                    String backend = System.getProperty(BACKEND_VARIABLE);
+                    String reason = BACKEND_VARIABLE + "=" + backend;
+                    if (backend == null) {
+                        backend = ReportShard.isShardRequested() ? "jsonl" : "extent";
+                        reason = ReportShard.isShardRequested() ? "report.shard is set" : "default";
+                    }
+                    jsonlBackend = "jsonl".equalsIgnoreCase(backend);
+                    LOGGER.info(String.format("Report backend: %s (%s)", jsonlBackend ? "jsonl" : "extent", reason));
+                }
+                jsonl = jsonlBackend;
+            }
+        }
+        return jsonl;
+    }
+
+    /**
+     * @return Report copied at the end of the suite, one per shard when the suite is sharded
+     */
+    public static String getLatestReportPath() {
+        return windowsPath + File.separator + ReportShard.tag(reportFileName) + ".html";
+    }
+
+    /**
+     * The sink of a suite is opened once: by {@link #init(ITestContext)}, or on the first event when events are
+     * reported before it
+     *
+     * @return Sink of the report backend, forwarding to the sink of the current suite
+     */
+    public static ReportSink getSink() {
+        return CURRENT_SINK;
+    }
+
+    private static ReportSink currentSink() {
+        ReportSink current = sink;
+        if (current != null) {
+            return current;
+        }
+        synchronized (ExtentManager.class) {
+            if (sink == null) {
+                sink = isJsonlBackend() ? openResultLog(getFileLocationBasedOnPlatform(""), new LinkedHashMap<>())
+                        : new ExtentReportSink();
+            }
+            return sink;
+        }
+    }
+
+    /**
+     * Close the result log of the JSONL backend and render the HTML report from it, nothing to do for the Extent
+     * backend. Call it after the final {@link ReportEventPipeline#drain()}.
+     */
+    public static synchronized void renderReport() {
+        if (!(sink instanceof JsonlReportSink)) {
+            return;
+        }
+        JsonlReportSink resultLog = (JsonlReportSink) sink;
+        ReportEventPipeline.getInstance().applyToModel(() -> {
+            try {
+                resultLog.close();
+            } catch (IOException e) {
+                LOGGER.error(String.format("Unable to close %s: %s", resultLogPath, e.getMessage()));
+            }
+        });
+        // Next to the result log, even when the log was opened before init chose another report path
+        reportFilePath = resultLog.getPath().toString().replaceAll("\\.jsonl$", ".html");
+        try {
+            JsonlReportRenderer.render(resultLog.getPath(), Paths.get(reportFilePath));
+        } catch (IOException e) {
+            LOGGER.error(String.format("Unable to render %s: %s", resultLogPath, e.getMessage()));
+        }
+    }
+
+    private static JsonlReportSink openResultLog(String reportPath, Map<String, String> runInfo) {
+        resultLogPath = reportPath.replaceAll("\\.html$", ".jsonl");
+        try {
+            return new JsonlReportSink(Paths.get(resultLogPath), withShardInfo(runInfo), !ReportEventPipeline.isEnabled());
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to open the result log " + resultLogPath, e);
+        }
+    }
+
+    private static Map<String, String> withShardInfo(Map<String, String> runInfo) {
+        if (ReportShard.isSharded()) {
+            runInfo.put("shard", ReportShard.getShardId());
+            runInfo.put("node", ReportShard.getNodeName());
+        }
+        return runInfo;
+    }
+
+    /**
+     * Lets the pipeline outlive a suite: a later suite opens its own result log and the events follow it
+     */
+    private static class CurrentSink implements ReportSink {
+
+        @Override
+        public void accept(ReportEvent event) {
+            currentSink().accept(event);
+        }
+
+        @Override
+        public void flush() {
+            currentSink().flush();
+        }
+    }
+
     private static void createReportPath(String path) {
         File testDirectory = new File(path);
         if (!testDirectory.exists()) {
@@ -67,7 +213,7 @@ public class ExtentManager {
         SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd_HHmmss");
         String ts = sdf.format(new Date());
         if(suiteName.equalsIgnoreCase("")) suiteName = reportFileName;
-        String path = windowsPath + File.separator + suiteName.replaceAll(" ","") + "_" + ts +".html";
+        String path = windowsPath + File.separator + ReportShard.tag(suiteName.replaceAll(" ","")) + "_" + ts +".html";
         reportFilePath = path;
         createReportPath(windowsPath);
         return path;
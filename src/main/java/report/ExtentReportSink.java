@@ -0,0 +1,29 @@
+package report;
+
+/**
+ * Applies report events to the Extent model and renders the HTML report on flush
+ */
+public class ExtentReportSink implements ReportSink {
+
+    @Override
+    public void accept(ReportEvent event) {
+        if (event.getTest() == null) {
+            return;
+        }
+        switch (event.getType()) {
+            case LOG:
+                event.getTest().log(event.getStatus(), event.getDetails());
+                break;
+            case FAIL:
+                event.getTest().fail(event.getThrowable());
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void flush() {
+        ExtentManager.getReporter().flush();
+    }
+}
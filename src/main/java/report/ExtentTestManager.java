@@ -3,46 +3,182 @@ package report;
 import com.aventstack.extentreports.ExtentReports;
 import com.aventstack.extentreports.ExtentTest;
 import com.aventstack.extentreports.Status;
+import org.testng.ITestResult;
+import org.testng.Reporter;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
+/**
+ * Report test of each running test invocation, without locking.
+ * <p>
+ * A test is registered by the thread that starts it, in {@code @BeforeMethod}, and bound to the TestNG result of the
+ * invocation the first time it is looked up from the test method. Threads and results are keys by identity, so a
+ * thread id reused by a pool never mixes two tests. Both entries are removed by {@link #endTest(ITestResult)} once
+ * the invocation completes.
+ */
 public class ExtentTestManager {
-    static Map extentTestMap = new HashMap();
+    private static final Map<Object, ExtentTest> extentTestMap = new ConcurrentHashMap<>();
+    private static final StepTemplate STEP_HTML = StepTemplate.compile("<b style= 'font-size: 15px;color:black'> {} </b>");
+    private static final StepTemplate PASS_HTML = StepTemplate.compile("<b style= 'font-size: 15px;color:green'> {} </b>");
+    private static final StepTemplate FAILURE_HTML = StepTemplate.compile("<b style= 'font-size: 15px;color:red'> {} </b>");
     public static ExtentReports extent;
 
     private ExtentTestManager() { }
 
-    public static synchronized ExtentTest startTest(String testName) {
+    public static ExtentTest startTest(String testName) {
         return startTest(testName, "");
     }
 
-    public static synchronized ExtentTest startTest(String testName, String desc) {
-        ExtentTest test = extent.createTest(testName, desc);
-        extentTestMap.put((int) (long) (Thread.currentThread().getId()), test);
+    /**
+     * Create the report test of the current invocation
+     *
+     * @param testName   Test name
+     * @param desc       Test description
+     * @param categories Categories, e.g. the TestNG groups
+     * @return Report test
+     */
+    public static ExtentTest startTest(String testName, String desc, String... categories) {
+        // Created under the model lock of the pipeline, the consumer may be rendering the report meanwhile
+        ExtentTest test = ReportEventPipeline.getInstance().applyToModel(() -> {
+            ExtentTest created = extent.createTest(testName, desc);
+            if (categories.length > 0) {
+                created.assignCategory(categories);
+            }
+            return created;
+        });
+        extentTestMap.put(Thread.currentThread(), test);
+        ReportEventPipeline.getInstance().publish(ReportEvent.start(test));
         return test;
     }
 
-    public static synchronized ExtentTest getTest() {
-        return (ExtentTest) extentTestMap.get((int) (long) (Thread.currentThread().getId()));
+    public static ExtentTest getTest() {
+        return getTest(Reporter.getCurrentTestResult());
     }
 
-    public static synchronized void logTestStep(String message) {
-        getTest().log(Status.INFO,
-                String.format("<b style= 'font-size: 15px;color:black'> %s </b>", message));
+    /**
+     * @param result TestNG result of the invocation, may be null
+     * @return Report test of the invocation, or of the current thread when the result is not bound yet
+     */
+    public static ExtentTest getTest(ITestResult result) {
+        ExtentTest test = result == null ? null : extentTestMap.get(result);
+        if (test == null) {
+            test = extentTestMap.get(Thread.currentThread());
+            if (test != null && result != null && result.getMethod().isTest()) {
+                extentTestMap.putIfAbsent(result, test);
+            }
+        }
+        return test;
+    }
+
+    /**
+     * Forget the report test of a completed invocation
+     *
+     * @param result TestNG result of the invocation
+     */
+    public static void endTest(ITestResult result) {
+        ExtentTest test = extentTestMap.remove(result);
+        if (test == null) {
+            test = extentTestMap.remove(Thread.currentThread());
+        } else {
+            extentTestMap.remove(Thread.currentThread(), test);
+        }
+        if (test == null) {
+            return;
+        }
+        ReportEventPipeline.getInstance().publish(ReportEvent.end(test, statusOf(result)));
+        if (ExtentManager.isJsonlBackend()) {
+            // The result log keeps the test, the model must not
+            ExtentTest ended = test;
+            ReportEventPipeline.getInstance().applyToModel(() -> extent.removeTest(ended));
+        }
+    }
+
+    /**
+     * @return Number of registered tests, stays small when every invocation is ended
+     */
+    public static int getActiveTestCount() {
+        return extentTestMap.size();
+    }
+
+    public static void logTestStep(String message) {
+        if (ReportLevel.isEnabled(Status.INFO)) {
+            ReportEventPipeline.getInstance().log(getTest(), Status.INFO, STEP_HTML.format(message));
+        }
+    }
+
+    public static void logPass(String message) {
+        if (ReportLevel.isEnabled(Status.PASS)) {
+            ReportEventPipeline.getInstance().log(getTest(), Status.PASS, PASS_HTML.format(message));
+        }
+    }
+
+    public static void logFailure(String message) {
+        if (ReportLevel.isEnabled(Status.FAIL)) {
+            ReportEventPipeline.getInstance().log(getTest(), Status.FAIL, FAILURE_HTML.format(message));
+        }
+    }
+
+    /**
+     * Report a step of the current test when its status passes {@code report.level}
+     *
+     * @param status  Step status
+     * @param message Step message
+     */
+    public static void logStep(Status status, String message) {
+        if (ReportLevel.isEnabled(status)) {
+            ReportEventPipeline.getInstance().log(getTest(), status, message);
+        }
+    }
+
+    /**
+     * @param status  Step status
+     * @param pattern Message pattern with a {@code {}} placeholder, formatted only when the step is reported
+     * @param arg     Placeholder value
+     */
+    public static void logStep(Status status, String pattern, Object arg) {
+        if (ReportLevel.isEnabled(status)) {
+            ReportEventPipeline.getInstance().log(getTest(), status, StepTemplate.of(pattern).format(arg));
+        }
+    }
+
+    public static void logStep(Status status, String pattern, Object arg1, Object arg2) {
+        if (ReportLevel.isEnabled(status)) {
+            ReportEventPipeline.getInstance().log(getTest(), status, StepTemplate.of(pattern).format(arg1, arg2));
+        }
+    }
+
+    public static void logStep(Status status, String pattern, Object... args) {
+        if (ReportLevel.isEnabled(status)) {
+            ReportEventPipeline.getInstance().log(getTest(), status, StepTemplate.of(pattern).format(args));
+        }
     }
 
-    public static synchronized void logPass(String message) {
-        getTest().log(Status.PASS,
-                String.format("<b style= 'font-size: 15px;color:green'> %s </b>", message));
+    /**
+     * @param status  Step status
+     * @param message Message built only when the step is reported
+     */
+    public static void logStep(Status status, Supplier<String> message) {
+        if (ReportLevel.isEnabled(status)) {
+            ReportEventPipeline.getInstance().log(getTest(), status, message.get());
+        }
     }
 
-    public static synchronized void logFailure(String message) {
-        getTest().log(Status.FAIL,
-                String.format("<b style= 'font-size: 15px;color:red'> %s </b>", message));
+    private static Status statusOf(ITestResult result) {
+        switch (result.getStatus()) {
+            case ITestResult.SUCCESS:
+                return Status.PASS;
+            case ITestResult.FAILURE:
+                return Status.FAIL;
+            case ITestResult.SKIP:
+                return Status.SKIP;
+            default:
+                return Status.WARNING;
+        }
     }
 
-    public static synchronized String getFolderPath() {
+    public static String getFolderPath() {
         return ExtentManager.windowsPath;
     }
 }
@@ -0,0 +1,334 @@
+package report;
+
+import com.aventstack.extentreports.ExtentTest;
+import com.aventstack.extentreports.Status;
+import org.apache.log4j.Logger;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+import utils.Sha256;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Store failure artifacts next to the report, off the test thread.
+ * <p>
+ * The test thread only takes the raw bytes (the screenshot from the driver) and hashes them. Compression and writing
+ * run on a bounded executor: screenshots are re-encoded as JPEG, unless {@code report.artifacts.screenshotFormat=png}
+ * keeps the PNG of the driver for text-heavy pages, and other artifacts are gzipped. Artifacts are stored
+ * once per SHA-256 of their content, so a thousand failures on the same page cost one file, and the report links the
+ * stored file instead of embedding it.
+ * <p>
+ * Properties: {@code report.artifacts.enabled} (true), {@code report.artifacts.dir} ({@code TestResult/artifacts}),
+ * {@code report.artifacts.threads} (2), {@code report.artifacts.queue} (64 pending artifacts),
+ * {@code report.artifacts.maxBytes} (256 MB per suite), {@code report.artifacts.jpegQuality} (0.7) and
+ * {@code report.artifacts.awaitMillis} (2 minutes), the wait for pending artifacts at the end of the suite.
+ * When the queue is full or the budget is spent the artifact is skipped and the report says so. The link is added to
+ * the test at once. If writing the file fails, every test linking it gets a warning that the link is broken.
+ */
+public class FailureArtifactStore {
+    private static final Logger LOGGER = Logger.getLogger(FailureArtifactStore.class);
+    private static final String ENABLED_VARIABLE = "report.artifacts.enabled";
+    private static final String DIR_VARIABLE = "report.artifacts.dir";
+    private static final String THREADS_VARIABLE = "report.artifacts.threads";
+    private static final String QUEUE_VARIABLE = "report.artifacts.queue";
+    private static final String MAX_BYTES_VARIABLE = "report.artifacts.maxBytes";
+    private static final String JPEG_QUALITY_VARIABLE = "report.artifacts.jpegQuality";
+    private static final String SCREENSHOT_FORMAT_VARIABLE = "report.artifacts.screenshotFormat";
+    private static final String AWAIT_MILLIS_VARIABLE = "report.artifacts.awaitMillis";
+    private static FailureArtifactStore instance;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final float jpegQuality;
+    private final boolean jpegScreenshots = !"png".equalsIgnoreCase(System.getProperty(SCREENSHOT_FORMAT_VARIABLE, "jpg"));
+    private final ThreadPoolExecutor executor;
+    private final Map<String, CompletableFuture<Boolean>> storedFiles = new ConcurrentHashMap<>();
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Object idle = new Object();
+
+    public FailureArtifactStore(Path directory, int threads, int queueSize, long maxBytes, float jpegQuality) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.jpegQuality = jpegQuality;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "report-artifacts-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static synchronized FailureArtifactStore getInstance() {
+        if (instance == null) {
+            instance = new FailureArtifactStore(
+                    Paths.get(System.getProperty(DIR_VARIABLE, ExtentManager.windowsPath + File.separator + "artifacts")),
+                    Integer.getInteger(THREADS_VARIABLE, 2),
+                    Integer.getInteger(QUEUE_VARIABLE, 64),
+                    Long.getLong(MAX_BYTES_VARIABLE, 256L * 1024 * 1024),
+                    Float.parseFloat(System.getProperty(JPEG_QUALITY_VARIABLE, "0.7")));
+        }
+        return instance;
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty(ENABLED_VARIABLE, "true"));
+    }
+
+    /**
+     * Take a screenshot and link it from the report test, it is compressed and written in the background
+     *
+     * @param test   Report test
+     * @param title  Title of the screenshot
+     * @param driver Web driver of the test, nothing is captured when it is null or cannot take screenshots
+     */
+    public void captureScreenshot(ExtentTest test, String title, WebDriver driver) {
+        if (!(driver instanceof TakesScreenshot)) {
+            return;
+        }
+        byte[] png;
+        try {
+            png = ((TakesScreenshot) driver).getScreenshotAs(OutputType.BYTES);
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable to take the screenshot of " + title + ": " + e.getMessage());
+            return;
+        }
+        this.store(test, title, png, jpegScreenshots ? ".jpg" : ".png", true);
+    }
+
+    /**
+     * Link a page source, a log or any other artifact from the report test, it is gzipped and written in the background
+     *
+     * @param test      Report test
+     * @param title     Title of the artifact
+     * @param content   Artifact content
+     * @param extension Extension of the artifact before compression, {@code .html} for example
+     */
+    public void attach(ExtentTest test, String title, byte[] content, String extension) {
+        this.store(test, title, content, extension + ".gz", false);
+    }
+
+    /**
+     * Wait up to {@code report.artifacts.awaitMillis} (2 minutes) for the artifacts already submitted to be written
+     *
+     * @return False when the timeout elapsed first
+     */
+    public boolean awaitIdle() {
+        return this.awaitIdle(Long.getLong(AWAIT_MILLIS_VARIABLE, 120000L));
+    }
+
+    /**
+     * Wait for the artifacts already submitted to be written
+     *
+     * @param timeoutMillis Maximum wait in milliseconds
+     * @return False when the timeout elapsed first
+     */
+    public boolean awaitIdle(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (idle) {
+            while (pending.get() > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    LOGGER.error(String.format("Failure artifacts still pending after %d ms: %s", timeoutMillis, this.getStats()));
+                    return false;
+                }
+                try {
+                    idle.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        LOGGER.info("Failure artifacts stored: " + this.getStats());
+        return true;
+    }
+
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    public String getStats() {
+        return String.format("stored=%d, duplicates=%d, skipped=%d, pending=%d, bytes=%d/%d",
+                storedFiles.size(), duplicates.get(), skipped.get(), pending.get(), usedBytes.get(), maxBytes);
+    }
+
+    private void store(ExtentTest test, String title, byte[] content, String extension, boolean image) {
+        String fileName = Sha256.hex(content) + extension;
+        String link = directory.resolve(fileName).toString();
+        CompletableFuture<Boolean> stored = storedFiles.get(fileName);
+        if (stored != null) {
+            duplicates.incrementAndGet();
+            this.reference(test, title, link, image, stored);
+            return;
+        }
+        // The raw size is reserved as an upper bound, the compressed size is settled once written
+        if (usedBytes.addAndGet(content.length) > maxBytes) {
+            usedBytes.addAndGet(-content.length);
+            this.skip(test, title, "the suite budget of " + maxBytes + " bytes is spent");
+            return;
+        }
+        CompletableFuture<Boolean> writing = new CompletableFuture<>();
+        stored = storedFiles.putIfAbsent(fileName, writing);
+        if (stored != null) {
+            usedBytes.addAndGet(-content.length);
+            duplicates.incrementAndGet();
+            this.reference(test, title, link, image, stored);
+            return;
+        }
+        pending.incrementAndGet();
+        try {
+            executor.execute(() -> this.write(fileName, content, image, writing));
+        } catch (RejectedExecutionException e) {
+            storedFiles.remove(fileName, writing);
+            usedBytes.addAndGet(-content.length);
+            this.done();
+            this.skip(test, title, "the capture queue is full");
+            // Duplicates that found the entry meanwhile learn that their link is broken
+            writing.complete(false);
+            return;
+        }
+        this.reference(test, title, link, image, writing);
+    }
+
+    /**
+     * @param written Completed with true once the file is in place, false when it could not be written
+     */
+    private void write(String fileName, byte[] content, boolean image, CompletableFuture<Boolean> written) {
+        Path target = directory.resolve(fileName);
+        long size = 0;
+        boolean stored = false;
+        try {
+            if (Files.exists(target)) {
+                size = Files.size(target);
+                stored = true;
+                return;
+            }
+            Files.createDirectories(directory);
+            // A file name is only ever written by one task, it is reserved in storedFiles
+            Path temp = directory.resolve(fileName + ".tmp");
+            try {
+                if (image && jpegScreenshots) {
+                    this.writeJpeg(content, temp);
+                } else if (image) {
+                    Files.write(temp, content);
+                } else {
+                    try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp))) {
+                        out.write(content);
+                    }
+                }
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            size = Files.size(target);
+            stored = true;
+        } catch (IOException | RuntimeException e) {
+            // A later capture of the same content tries again
+            storedFiles.remove(fileName, written);
+            LOGGER.error("Unable to store failure artifact " + target + ": " + e.getMessage());
+        } finally {
+            usedBytes.addAndGet(size - content.length);
+            // Before done(), so that awaitIdle also waits for the warnings of a failed write
+            written.complete(stored);
+            this.done();
+        }
+    }
+
+    private void writeJpeg(byte[] content, Path target) throws IOException {
+        BufferedImage source = ImageIO.read(new ByteArrayInputStream(content));
+        if (source == null) {
+            Files.write(target, content);
+            return;
+        }
+        // JPEG has no alpha channel
+        BufferedImage rgb = new BufferedImage(source.getWidth(), source.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgb.createGraphics();
+        graphics.drawImage(source, 0, 0, Color.WHITE, null);
+        graphics.dispose();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(target.toFile())) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(rgb, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * Link the artifact from the test now, and warn the test if the file turns out not to be written
+     */
+    private void reference(ExtentTest test, String title, String path, boolean image, CompletableFuture<Boolean> stored) {
+        String href = this.relativeToReport(path);
+        String escapedTitle = JsonlReportRenderer.escape(title);
+        ReportEventPipeline.getInstance().log(test, Status.INFO, image
+                ? "<a href='" + href + "' target='_blank'><img src='" + href + "' alt='" + escapedTitle
+                + "' style='max-width:320px'></a>"
+                : "<a href='" + href + "' target='_blank'>" + escapedTitle + "</a>");
+        stored.thenAccept(written -> {
+            if (!written) {
+                this.skip(test, title, "writing " + href + " failed, the link above is broken");
+            }
+        });
+    }
+
+    private void skip(ExtentTest test, String title, String reason) {
+        skipped.incrementAndGet();
+        LOGGER.warn("Skipped failure artifact " + title + ": " + reason);
+        ReportEventPipeline.getInstance().log(test, Status.WARNING,
+                "Artifact " + JsonlReportRenderer.escape(title) + " not stored: " + reason);
+    }
+
+    /**
+     * Reports are written in the report folder, links to artifacts below it are relative so the folder can be moved
+     */
+    private String relativeToReport(String path) {
+        Path reportDirectory = Paths.get(ExtentManager.windowsPath).toAbsolutePath();
+        Path artifact = Paths.get(path).toAbsolutePath();
+        if (artifact.startsWith(reportDirectory)) {
+            return reportDirectory.relativize(artifact).toString().replace(File.separatorChar, '/');
+        }
+        return artifact.toUri().toString();
+    }
+
+    private void done() {
+        if (pending.decrementAndGet() == 0) {
+            synchronized (idle) {
+                idle.notifyAll();
+            }
+        }
+    }
+}
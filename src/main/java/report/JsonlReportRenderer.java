@@ -0,0 +1,445 @@
+package report;
+
+import com.aventstack.extentreports.ExtentReports;
+import com.aventstack.extentreports.ExtentTest;
+import com.aventstack.extentreports.Status;
+import com.aventstack.extentreports.reporter.ExtentHtmlReporter;
+import com.aventstack.extentreports.reporter.configuration.Theme;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Build a report from a result log written by {@link JsonlReportSink}.
+ * <p>
+ * The log is streamed twice, once for the totals and once for the tests, and only the tests still running at a given
+ * point of the log are held in memory. A log cut short by a crash is rendered up to its last complete line, tests
+ * without an end record are reported as incomplete. Steps logged shortly after the end of their test, such as the
+ * warning of a failure artifact that could not be written, are still rendered.
+ * <pre>
+ * java report.JsonlReportRenderer TestResult/Suite_Test_20210101_000000.jsonl TestResult/Suite_Test.html
+ * java report.JsonlReportRenderer --extent TestResult/Suite_Test_20210101_000000.jsonl TestResult/Suite_Test.html
+ * </pre>
+ */
+public class JsonlReportRenderer {
+    private static final Logger LOGGER = Logger.getLogger(JsonlReportRenderer.class);
+    private static final int RECENT_TESTS = 1024;
+
+    private JsonlReportRenderer() { }
+
+    public static void main(String[] args) throws IOException {
+        boolean extent = args.length == 3 && "--extent".equals(args[0]);
+        if (args.length != (extent ? 3 : 2)) {
+            System.err.println("Usage: JsonlReportRenderer [--extent] <result.jsonl> <report.html>");
+            System.exit(2);
+        }
+        Path resultLog = Paths.get(args[extent ? 1 : 0]);
+        Path html = Paths.get(args[extent ? 2 : 1]);
+        if (extent) {
+            renderExtent(resultLog, html);
+        } else {
+            System.out.println(render(resultLog, html));
+        }
+    }
+
+    /**
+     * Read the totals of a result log without rendering it
+     *
+     * @param resultLog Result log
+     * @return Totals of the run
+     * @throws IOException IO Exception
+     */
+    public static Summary summarize(Path resultLog) throws IOException {
+        Summary summary = new Summary();
+        Map<String, Long> running = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(resultLog, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JsonObject record = parse(line, summary);
+                if (record == null) {
+                    continue;
+                }
+                long timestamp = record.get("ts").getAsLong();
+                summary.firstTimestamp = Math.min(summary.firstTimestamp, timestamp);
+                summary.lastTimestamp = Math.max(summary.lastTimestamp, timestamp);
+                switch (record.get("type").getAsString()) {
+                    case "RUN":
+                        if (summary.name == null && record.has("name")) {
+                            summary.name = record.get("name").getAsString();
+                        }
+                        break;
+                    case "START":
+                        running.put(record.get("id").getAsString(), timestamp);
+                        break;
+                    case "END":
+                        Long start = running.remove(record.get("id").getAsString());
+                        if (start != null) {
+                            summary.count(Status.valueOf(record.get("status").getAsString()), timestamp - start);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        summary.incomplete = running.size();
+        return summary;
+    }
+
+    /**
+     * Render a result log as a single HTML page
+     *
+     * @param resultLog Result log
+     * @param html      HTML report to write
+     * @return Totals of the run
+     * @throws IOException IO Exception
+     */
+    public static Summary render(Path resultLog, Path html) throws IOException {
+        Summary summary = summarize(resultLog);
+        Map<String, RenderedTest> running = new LinkedHashMap<>();
+        Map<String, String> ended = recent();
+        if (html.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(html.toAbsolutePath().getParent());
+        }
+        try (BufferedReader reader = Files.newBufferedReader(resultLog, StandardCharsets.UTF_8);
+             Writer out = new BufferedWriter(Files.newBufferedWriter(html, StandardCharsets.UTF_8), 64 * 1024)) {
+            writeHeader(out, summary);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JsonObject record = parse(line, null);
+                if (record == null || !record.has("id")) {
+                    continue;
+                }
+                String id = record.get("id").getAsString();
+                long timestamp = record.get("ts").getAsLong();
+                switch (record.get("type").getAsString()) {
+                    case "START":
+                        running.put(id, new RenderedTest(string(record, "name"), string(record, "desc"), timestamp));
+                        break;
+                    case "LOG":
+                        RenderedTest logged = running.get(id);
+                        if (logged != null) {
+                            logged.addLog(timestamp, string(record, "status"), string(record, "details"));
+                        } else if (ended.containsKey(id)) {
+                            RenderedTest late = new RenderedTest(ended.get(id), "", timestamp);
+                            late.addLog(timestamp, string(record, "status"), string(record, "details"));
+                            late.write(out, string(record, "status"), 0, " after the end of the test");
+                        }
+                        break;
+                    case "FAIL":
+                        RenderedTest failed = running.get(id);
+                        if (failed != null) {
+                            failed.addLog(timestamp, Status.FAIL.name(),
+                                    "<pre>" + escape(string(record, "error")) + "</pre>");
+                        }
+                        break;
+                    case "END":
+                        RenderedTest test = running.remove(id);
+                        if (test != null) {
+                            test.write(out, string(record, "status"), timestamp - test.start, categories(record));
+                            ended.put(id, test.name);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            for (RenderedTest incomplete : running.values()) {
+                incomplete.write(out, "INCOMPLETE", summary.lastTimestamp - incomplete.start, "");
+            }
+            out.write("</main></body></html>\n");
+        }
+        LOGGER.info(String.format("Rendered %s to %s: %s", resultLog, html, summary));
+        return summary;
+    }
+
+    /**
+     * Replay a result log into an Extent HTML report. The whole run is held by the Extent model, keep it for runs
+     * that fit in memory.
+     *
+     * @param resultLog Result log
+     * @param html      HTML report to write
+     * @throws IOException IO Exception
+     */
+    public static void renderExtent(Path resultLog, Path html) throws IOException {
+        ExtentReports extent = new ExtentReports();
+        ExtentHtmlReporter htmlReport = new ExtentHtmlReporter(html.toString());
+        htmlReport.config().setTheme(Theme.DARK);
+        extent.attachReporter(htmlReport);
+        Map<String, ExtentTest> running = new HashMap<>();
+        Map<String, ExtentTest> ended = recent();
+        try (BufferedReader reader = Files.newBufferedReader(resultLog, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JsonObject record = parse(line, null);
+                if (record == null) {
+                    continue;
+                }
+                String type = record.get("type").getAsString();
+                if ("RUN".equals(type)) {
+                    for (Map.Entry<String, JsonElement> info : record.entrySet()) {
+                        if (!info.getValue().isJsonNull()) {
+                            extent.setSystemInfo(info.getKey(), info.getValue().getAsString());
+                        }
+                    }
+                    continue;
+                }
+                String id = record.get("id").getAsString();
+                Date timestamp = new Date(record.get("ts").getAsLong());
+                if ("START".equals(type)) {
+                    ExtentTest test = extent.createTest(string(record, "name"), string(record, "desc"));
+                    test.getModel().setStartTime(timestamp);
+                    running.put(id, test);
+                    continue;
+                }
+                ExtentTest test = running.get(id);
+                if (test == null && "LOG".equals(type)) {
+                    test = ended.get(id);
+                }
+                if (test == null) {
+                    continue;
+                }
+                if ("LOG".equals(type)) {
+                    test.log(Status.valueOf(string(record, "status")), string(record, "details"));
+                } else if ("FAIL".equals(type)) {
+                    test.fail("<pre>" + escape(string(record, "error")) + "</pre>");
+                } else if ("END".equals(type)) {
+                    for (JsonElement category : record.getAsJsonArray("categories")) {
+                        test.assignCategory(category.getAsString());
+                    }
+                    test.getModel().setEndTime(timestamp);
+                    ended.put(id, running.remove(id));
+                }
+            }
+        }
+        extent.flush();
+        LOGGER.info(String.format("Rendered %s to %s", resultLog, html));
+    }
+
+    /**
+     * @return Map of the last ended tests, bounded so that memory does not grow with the run
+     */
+    private static <V> Map<String, V> recent() {
+        return new LinkedHashMap<String, V>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return this.size() > RECENT_TESTS;
+            }
+        };
+    }
+
+    /**
+     * @param summary Summary counting the malformed lines, may be null
+     * @return Record of the line, null when the line is incomplete or not a record
+     */
+    private static JsonObject parse(String line, Summary summary) {
+        if (line.isEmpty()) {
+            return null;
+        }
+        try {
+            JsonElement element = JsonParser.parseString(line);
+            if (element.isJsonObject() && element.getAsJsonObject().has("type") && element.getAsJsonObject().has("ts")) {
+                return element.getAsJsonObject();
+            }
+        } catch (JsonParseException e) {
+            // Last line of a log cut short by a crash
+        }
+        if (summary != null) {
+            summary.malformedLines++;
+        }
+        return null;
+    }
+
+    private static String string(JsonObject record, String name) {
+        JsonElement value = record.get(name);
+        return value == null || value.isJsonNull() ? "" : value.getAsString();
+    }
+
+    private static String categories(JsonObject record) {
+        StringBuilder categories = new StringBuilder();
+        if (record.has("categories")) {
+            for (JsonElement category : record.getAsJsonArray("categories")) {
+                categories.append("<span class='category'>").append(escape(category.getAsString())).append("</span>");
+            }
+        }
+        return categories.toString();
+    }
+
+    static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length() + 16);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<':
+                    escaped.append("&lt;");
+                    break;
+                case '>':
+                    escaped.append("&gt;");
+                    break;
+                case '&':
+                    escaped.append("&amp;");
+                    break;
+                case '"':
+                    escaped.append("&quot;");
+                    break;
+                case '\'':
+                    escaped.append("&#39;");
+                    break;
+                default:
+                    escaped.append(c);
+                    break;
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static void writeHeader(Writer out, Summary summary) throws IOException {
+        String title = escape(summary.name == null ? ExtentManager.reportFileName : summary.name);
+        out.write("<!DOCTYPE html><html><head><meta charset='utf-8'><title>" + title + "</title><style>"
+                + "body{font-family:sans-serif;background:#1e1e1e;color:#ddd;margin:0 2em}"
+                + "table{border-collapse:collapse;width:100%}td,th{padding:4px 8px;text-align:left;vertical-align:top}"
+                + "details{border-left:6px solid #888;margin:6px 0;background:#2a2a2a}summary{padding:6px;cursor:pointer}"
+                + ".PASS{border-color:#2e7d32}.FAIL,.FATAL,.ERROR{border-color:#c62828}.SKIP,.WARNING{border-color:#f9a825}"
+                + ".INCOMPLETE{border-color:#6a1b9a}.category{background:#444;border-radius:3px;margin-left:6px;padding:0 4px}"
+                + "pre{white-space:pre-wrap}</style></head><body><h1>" + title + "</h1><table><tr>"
+                + "<th>Tests</th><th>Passed</th><th>Failed</th><th>Skipped</th><th>Incomplete</th><th>Started</th><th>Duration</th></tr>");
+        out.write(String.format("<tr><td>%d</td><td>%d</td><td>%d</td><td>%d</td><td>%d</td><td>%s</td><td>%s</td></tr></table><main>",
+                summary.getTotal(), summary.passed, summary.failed, summary.skipped, summary.incomplete,
+                summary.firstTimestamp == Long.MAX_VALUE ? "" : formatTime(summary.firstTimestamp),
+                formatDuration(summary.getDurationMillis())));
+    }
+
+    private static String formatTime(long timestamp) {
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(timestamp));
+    }
+
+    private static String formatDuration(long millis) {
+        return String.format("%d:%02d:%02d.%03d", millis / 3600000, millis / 60000 % 60, millis / 1000 % 60, millis % 1000);
+    }
+
+    /**
+     * Totals of a result log
+     */
+    public static class Summary {
+        private String name;
+        private long passed;
+        private long failed;
+        private long skipped;
+        private long incomplete;
+        private long malformedLines;
+        private long testMillis;
+        private long firstTimestamp = Long.MAX_VALUE;
+        private long lastTimestamp = Long.MIN_VALUE;
+
+        private void count(Status status, long durationMillis) {
+            if (status == Status.PASS) {
+                passed++;
+            } else if (status == Status.SKIP) {
+                skipped++;
+            } else {
+                failed++;
+            }
+            testMillis += durationMillis;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getTotal() {
+            return passed + failed + skipped + incomplete;
+        }
+
+        public long getPassed() {
+            return passed;
+        }
+
+        /**
+         * @return Tests ended with any status other than pass or skip
+         */
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * @return Tests started without an end record
+         */
+        public long getIncomplete() {
+            return incomplete;
+        }
+
+        public long getMalformedLines() {
+            return malformedLines;
+        }
+
+        /**
+         * @return Sum of the durations of the ended tests
+         */
+        public long getTestMillis() {
+            return testMillis;
+        }
+
+        /**
+         * @return Wall-clock time from the first to the last record
+         */
+        public long getDurationMillis() {
+            return firstTimestamp == Long.MAX_VALUE ? 0 : lastTimestamp - firstTimestamp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d tests, %d passed, %d failed, %d skipped, %d incomplete in %d ms (%d malformed lines)",
+                    this.getTotal(), passed, failed, skipped, incomplete, this.getDurationMillis(), malformedLines);
+        }
+    }
+
+    private static class RenderedTest {
+        private final String name;
+        private final String description;
+        private final long start;
+        private final StringBuilder logs = new StringBuilder();
+
+        private RenderedTest(String name, String description, long start) {
+            this.name = name;
+            this.description = description;
+            this.start = start;
+        }
+
+        private void addLog(long timestamp, String status, String details) {
+            // Details are HTML already, as they are in the Extent report
+            logs.append("<tr><td>").append(formatTime(timestamp)).append("</td><td>").append(status)
+                    .append("</td><td>").append(details).append("</td></tr>");
+        }
+
+        private void write(Writer out, String status, long durationMillis, String categories) throws IOException {
+            out.write("<details class='" + status + "'><summary><b>" + escape(name) + "</b> " + status + " "
+                    + formatDuration(durationMillis) + categories + "</summary>");
+            if (!description.isEmpty()) {
+                out.write("<p>" + escape(description) + "</p>");
+            }
+            out.write("<table>");
+            out.write(logs.toString());
+            out.write("</table></details>\n");
+        }
+    }
+}
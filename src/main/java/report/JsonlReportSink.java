@@ -0,0 +1,214 @@
+package report;
+
+import com.aventstack.extentreports.model.Attribute;
+import com.aventstack.extentreports.model.Test;
+import com.google.gson.stream.JsonWriter;
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * Append report events to a JSON lines result log instead of keeping them in the Extent model.
+ * <p>
+ * Every event is one line, written through a fixed direct buffer to an append-only file channel: memory use does not
+ * depend on the size of the run, and everything flushed before a crash stays readable. Set
+ * {@code report.jsonl.fsync=true} to also force the data to disk on each flush. {@link JsonlReportRenderer} builds the
+ * HTML report from the log afterwards. Without a pipeline thread to flush it, the sink is opened with
+ * {@code flushEveryRecord} so that a crash loses nothing.
+ * <pre>
+ * {"type":"START","id":"12","ts":1609459200000,"thread":"TestNG-1","name":"verifyVisit","desc":"..."}
+ * {"type":"LOG","id":"12","ts":1609459200100,"thread":"TestNG-1","status":"INFO","details":"..."}
+ * {"type":"END","id":"12","ts":1609459200500,"thread":"TestNG-1","status":"PASS","categories":["smoke"]}
+ * </pre>
+ */
+public class JsonlReportSink implements ReportSink, Closeable {
+    private static final Logger LOGGER = Logger.getLogger(JsonlReportSink.class);
+    private static final String FSYNC_VARIABLE = "report.jsonl.fsync";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final boolean fsync = Boolean.getBoolean(FSYNC_VARIABLE);
+    private final StringWriter line = new StringWriter(512);
+    private final boolean flushEveryRecord;
+    private long droppedAfterClose;
+
+    /**
+     * @param path    Result log, appended to when it already exists
+     * @param runInfo Information of the run written in the first record
+     * @throws IOException IO Exception
+     */
+    public JsonlReportSink(Path path, Map<String, String> runInfo) throws IOException {
+        this(path, runInfo, false);
+    }
+
+    /**
+     * @param path             Result log, appended to when it already exists
+     * @param runInfo          Information of the run written in the first record
+     * @param flushEveryRecord Write every record to the file at once instead of when the buffer is full or flushed
+     * @throws IOException IO Exception
+     */
+    public JsonlReportSink(Path path, Map<String, String> runInfo, boolean flushEveryRecord) throws IOException {
+        this.path = path;
+        this.flushEveryRecord = flushEveryRecord;
+        if (path.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.writeRun(runInfo);
+        LOGGER.info("Writing report events to " + path);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * Write a run record, e.g. the information of a suite that started after the log was opened
+     *
+     * @param runInfo Information of the run
+     */
+    public void writeRun(Map<String, String> runInfo) {
+        try {
+            JsonWriter json = this.beginRecord("RUN", null, System.currentTimeMillis(), Thread.currentThread().getName());
+            for (Map.Entry<String, String> info : runInfo.entrySet()) {
+                json.name(info.getKey()).value(info.getValue());
+            }
+            this.endRecord(json);
+            this.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void accept(ReportEvent event) {
+        if (event.getTest() == null || event.getType() == ReportEvent.Type.FLUSH) {
+            return;
+        }
+        if (!channel.isOpen()) {
+            if (droppedAfterClose++ == 0) {
+                LOGGER.warn("Result log " + path + " is closed, dropping the report events published after the suite");
+            }
+            return;
+        }
+        Test model = event.getTest().getModel();
+        try {
+            JsonWriter json = this.beginRecord(event.getType().name(), String.valueOf(model.getId()),
+                    event.getTimestamp(), event.getThreadName());
+            switch (event.getType()) {
+                case START:
+                    json.name("name").value(model.getName());
+                    json.name("desc").value(model.getDescription());
+                    break;
+                case LOG:
+                    json.name("status").value(event.getStatus().name());
+                    json.name("details").value(event.getDetails());
+                    break;
+                case FAIL:
+                    json.name("error").value(stackTraceOf(event));
+                    break;
+                case END:
+                    json.name("status").value(event.getStatus().name());
+                    json.name("categories").beginArray();
+                    for (Attribute category : model.getCategoryContext().getAll()) {
+                        json.value(category.getName());
+                    }
+                    json.endArray();
+                    break;
+                default:
+                    break;
+            }
+            this.endRecord(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+            if (fsync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        this.flush();
+        channel.close();
+    }
+
+    private static String stackTraceOf(ReportEvent event) {
+        if (event.getThrowable() == null) {
+            return event.getDetails();
+        }
+        StringWriter stackTrace = new StringWriter();
+        event.getThrowable().printStackTrace(new PrintWriter(stackTrace));
+        return stackTrace.toString();
+    }
+
+    private JsonWriter beginRecord(String type, String id, long timestamp, String threadName) throws IOException {
+        line.getBuffer().setLength(0);
+        JsonWriter json = new JsonWriter(line);
+        json.beginObject();
+        json.name("type").value(type);
+        if (id != null) {
+            json.name("id").value(id);
+        }
+        json.name("ts").value(timestamp);
+        json.name("thread").value(threadName);
+        return json;
+    }
+
+    private void endRecord(JsonWriter json) throws IOException {
+        json.endObject();
+        json.flush();
+        line.write('\n');
+        byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > buffer.remaining()) {
+            this.flush();
+        }
+        if (bytes.length > buffer.capacity()) {
+            ByteBuffer record = ByteBuffer.wrap(bytes);
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        } else {
+            buffer.put(bytes);
+        }
+        if (flushEveryRecord) {
+            this.flush();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package report;
+
+import com.aventstack.extentreports.ExtentTest;
+import com.aventstack.extentreports.Status;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Report update published by a test thread and applied later by {@link ReportEventPipeline}
+ */
+public class ReportEvent {
+    private final Type type;
+    private final ExtentTest test;
+    private final Status status;
+    private final String details;
+    private final Throwable throwable;
+    private final long timestamp;
+    private final String threadName;
+    private CountDownLatch flushed;
+
+    private ReportEvent(Type type, ExtentTest test, Status status, String details, Throwable throwable) {
+        this.type = type;
+        this.test = test;
+        this.status = status;
+        this.details = details;
+        this.throwable = throwable;
+        this.timestamp = System.currentTimeMillis();
+        this.threadName = Thread.currentThread().getName();
+    }
+
+    public static ReportEvent start(ExtentTest test) {
+        return new ReportEvent(Type.START, test, null, null, null);
+    }
+
+    /**
+     * @param status Final status of the test
+     */
+    public static ReportEvent end(ExtentTest test, Status status) {
+        return new ReportEvent(Type.END, test, status, null, null);
+    }
+
+    public static ReportEvent log(ExtentTest test, Status status, String details) {
+        return new ReportEvent(Type.LOG, test, status, details, null);
+    }
+
+    public static ReportEvent fail(ExtentTest test, Throwable throwable) {
+        return new ReportEvent(Type.FAIL, test, Status.FAIL, throwable == null ? null : throwable.toString(), throwable);
+    }
+
+    /**
+     * @param flushed Latch released once the sink is flushed
+     */
+    static ReportEvent flush(CountDownLatch flushed) {
+        ReportEvent event = new ReportEvent(Type.FLUSH, null, null, null, null);
+        event.flushed = flushed;
+        return event;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public ExtentTest getTest() {
+        return test;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getDetails() {
+        return details;
+    }
+
+    /**
+     * @return Error of a {@link Type#FAIL} event
+     */
+    public Throwable getThrowable() {
+        return throwable;
+    }
+
+    /**
+     * @return Time the event was published, not applied
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+
+    CountDownLatch getFlushed() {
+        return flushed;
+    }
+
+    public enum Type {
+        START, LOG, FAIL, END, FLUSH
+    }
+}
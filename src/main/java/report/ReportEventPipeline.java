@@ -0,0 +1,321 @@
+package report;
+
+import com.aventstack.extentreports.ExtentTest;
+import com.aventstack.extentreports.Status;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Take report updates off the test threads.
+ * <p>
+ * Test threads publish {@link ReportEvent}s into a bounded ring buffer and return. A single daemon thread applies
+ * them to the {@link ReportSink} in batches and renders the report every {@code report.pipeline.flushIntervalMillis}
+ * (30 s, or 1 s for the JSONL backend) or every {@code report.pipeline.flushEvents} applied events, whichever comes
+ * first. Nothing is rendered while no
+ * event arrives, so the number of renders follows the duration of the suite instead of its number of classes.
+ * <p>
+ * When the buffer is full the {@code report.pipeline.backpressure} policy applies:
+ * <ul>
+ *     <li>{@code BLOCK}: the test thread waits for room, no event is lost (default)</li>
+ *     <li>{@code DROP}: the event is counted and discarded</li>
+ * </ul>
+ * Changes the test thread needs at once, such as creating a test, go through {@link #applyToModel(Supplier)}. The
+ * report model is only ever changed under the lock the consumer holds while it applies and flushes events.
+ * {@link #drain()} must be called in {@code @AfterSuite}, it returns once every event published before it is applied
+ * and the report is written. A shutdown hook drains again in case the suite ends without it.
+ * Set {@code report.pipeline.enabled=false} to apply the events on the test thread as before.
+ */
+public class ReportEventPipeline {
+    private static final Logger LOGGER = Logger.getLogger(ReportEventPipeline.class);
+    private static final String ENABLED_VARIABLE = "report.pipeline.enabled";
+    private static final String CAPACITY_VARIABLE = "report.pipeline.capacity";
+    private static final String BACKPRESSURE_VARIABLE = "report.pipeline.backpressure";
+    private static final String FLUSH_INTERVAL_VARIABLE = "report.pipeline.flushIntervalMillis";
+    private static final String FLUSH_EVENTS_VARIABLE = "report.pipeline.flushEvents";
+    private static final String DRAIN_TIMEOUT_VARIABLE = "report.pipeline.drainTimeoutMillis";
+    private static final int BATCH_SIZE = 256;
+    private static ReportEventPipeline instance;
+
+    private final ReportSink sink;
+    private final boolean enabled;
+    private final BlockingQueue<ReportEvent> queue;
+    private final Backpressure backpressure;
+    private final long flushIntervalMillis;
+    private final long flushEvents;
+    private final long drainTimeoutMillis;
+    private final Object sinkLock = new Object();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong applied = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private long pendingEvents;
+    private long lastFlush = System.currentTimeMillis();
+
+    public ReportEventPipeline(ReportSink sink, boolean enabled, int capacity, Backpressure backpressure,
+                               long flushIntervalMillis, long flushEvents, long drainTimeoutMillis) {
+        this.sink = sink;
+        this.enabled = enabled;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.backpressure = backpressure;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.flushEvents = flushEvents;
+        this.drainTimeoutMillis = drainTimeoutMillis;
+        if (enabled) {
+            Thread consumer = new Thread(this::consume, "report-pipeline");
+            consumer.setDaemon(true);
+            consumer.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(this::drain, "report-pipeline-drain"));
+        }
+    }
+
+    public static synchronized ReportEventPipeline getInstance() {
+        if (instance == null) {
+            instance = new ReportEventPipeline(ExtentManager.getSink(), isEnabled(),
+                    Integer.getInteger(CAPACITY_VARIABLE, 8192),
+                    Backpressure.valueOf(System.getProperty(BACKPRESSURE_VARIABLE, Backpressure.BLOCK.name()).toUpperCase()),
+                    Long.getLong(FLUSH_INTERVAL_VARIABLE, ExtentManager.isJsonlBackend() ? 1000L : 30000L),
+                    Long.getLong(FLUSH_EVENTS_VARIABLE, 20000L),
+                    Long.getLong(DRAIN_TIMEOUT_VARIABLE, 120000L));
+        }
+        return instance;
+    }
+
+    /**
+     * @return False when {@code report.pipeline.enabled=false}, events are then applied on the test threads
+     */
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty(ENABLED_VARIABLE, "true"));
+    }
+
+    /**
+     * @param test    Report test, resolved on the calling thread
+     * @param status  Log status
+     * @param details Log details
+     */
+    public void log(ExtentTest test, Status status, String details) {
+        this.publish(ReportEvent.log(test, status, details));
+    }
+
+    /**
+     * @param test      Report test, resolved on the calling thread
+     * @param throwable Failure of the test
+     */
+    public void fail(ExtentTest test, Throwable throwable) {
+        this.publish(ReportEvent.fail(test, throwable));
+    }
+
+    /**
+     * Change the report model from the calling thread, never while the consumer applies or flushes events
+     *
+     * @param change Change of the model, e.g. creating a test
+     * @param <T>    Result type
+     * @return Result of the change
+     */
+    public <T> T applyToModel(Supplier<T> change) {
+        synchronized (sinkLock) {
+            return change.get();
+        }
+    }
+
+    /**
+     * @param change Change of the model without result, e.g. removing a test
+     */
+    public void applyToModel(Runnable change) {
+        synchronized (sinkLock) {
+            change.run();
+        }
+    }
+
+    /**
+     * Queue an event, or apply the backpressure policy when the buffer is full
+     *
+     * @param event Report event
+     */
+    public void publish(ReportEvent event) {
+        published.incrementAndGet();
+        if (!enabled) {
+            this.applyNow(event);
+            return;
+        }
+        if (queue.offer(event)) {
+            return;
+        }
+        switch (backpressure) {
+            case DROP:
+                if (dropped.incrementAndGet() % 1000 == 1) {
+                    LOGGER.warn(String.format("Report buffer is full, %d event(s) dropped so far", dropped.get()));
+                }
+                break;
+            default:
+                try {
+                    queue.put(event);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped.incrementAndGet();
+                }
+                break;
+        }
+    }
+
+    /**
+     * Apply every event published so far and write the report, waiting up to {@code report.pipeline.drainTimeoutMillis}
+     *
+     * @return False when the timeout elapsed first
+     */
+    public boolean drain() {
+        return this.drain(drainTimeoutMillis);
+    }
+
+    /**
+     * Apply every event published so far and write the report
+     *
+     * @param timeoutMillis Maximum wait in milliseconds
+     * @return False when the timeout elapsed first
+     */
+    public boolean drain(long timeoutMillis) {
+        if (!enabled) {
+            this.flushNow();
+            return true;
+        }
+        CountDownLatch flushed = new CountDownLatch(1);
+        try {
+            // The barrier is never dropped: it must follow every event already in the buffer
+            if (!queue.offer(ReportEvent.flush(flushed), timeoutMillis, TimeUnit.MILLISECONDS)
+                    || !flushed.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                LOGGER.error(String.format("Report pipeline not drained after %d ms: %s", timeoutMillis, this.getStats()));
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        LOGGER.info("Report pipeline drained: " + this.getStats());
+        return true;
+    }
+
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    public long getAppliedCount() {
+        return applied.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getFlushCount() {
+        return flushes.get();
+    }
+
+    public String getStats() {
+        return String.format("published=%d, applied=%d, dropped=%d, buffered=%d, flushes=%d",
+                published.get(), applied.get(), dropped.get(), queue.size(), flushes.get());
+    }
+
+    private void consume() {
+        List<ReportEvent> batch = new ArrayList<>(BATCH_SIZE);
+        while (true) {
+            try {
+                long wait = pendingEvents == 0 ? flushIntervalMillis
+                        : Math.max(1, lastFlush + flushIntervalMillis - System.currentTimeMillis());
+                ReportEvent first = queue.poll(wait, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, BATCH_SIZE - 1);
+                }
+                synchronized (sinkLock) {
+                    for (ReportEvent event : batch) {
+                        if (event.getType() == ReportEvent.Type.FLUSH) {
+                            try {
+                                this.flushSafely(true);
+                            } finally {
+                                event.getFlushed().countDown();
+                            }
+                        } else {
+                            this.accept(event);
+                            if (pendingEvents >= flushEvents) {
+                                this.flushSafely(false);
+                            }
+                        }
+                    }
+                    if (pendingEvents > 0 && System.currentTimeMillis() - lastFlush >= flushIntervalMillis) {
+                        this.flushSafely(false);
+                    }
+                }
+            } catch (InterruptedException e) {
+                LOGGER.warn("Report pipeline interrupted: " + this.getStats());
+                return;
+            } catch (RuntimeException e) {
+                LOGGER.error("Report pipeline failed to write the report", e);
+            } finally {
+                // A drain waiting on a barrier of this batch must not wait for its whole timeout
+                for (ReportEvent event : batch) {
+                    if (event.getType() == ReportEvent.Type.FLUSH) {
+                        event.getFlushed().countDown();
+                    }
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    private void applyNow(ReportEvent event) {
+        synchronized (sinkLock) {
+            this.accept(event);
+        }
+    }
+
+    private void flushNow() {
+        synchronized (sinkLock) {
+            this.flushPending(true);
+        }
+    }
+
+    /**
+     * Write the report, a failure is logged and the next events are still applied
+     */
+    private void flushSafely(boolean force) {
+        try {
+            this.flushPending(force);
+        } catch (RuntimeException e) {
+            LOGGER.error("Report pipeline failed to write the report", e);
+        }
+    }
+
+    /**
+     * @param force Write the report even when no event was applied since the last flush
+     */
+    private void flushPending(boolean force) {
+        if (pendingEvents == 0 && !force) {
+            return;
+        }
+        pendingEvents = 0;
+        lastFlush = System.currentTimeMillis();
+        sink.flush();
+        flushes.incrementAndGet();
+    }
+
+    private void accept(ReportEvent event) {
+        try {
+            sink.accept(event);
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable to apply report event " + event.getType() + " of thread " + event.getThreadName(), e);
+        }
+        applied.incrementAndGet();
+        pendingEvents++;
+    }
+
+    public enum Backpressure {
+        BLOCK, DROP
+    }
+}
@@ -0,0 +1,57 @@
+package report;
+
+import com.aventstack.extentreports.Status;
+
+/**
+ * Lowest status of the steps written to the report, {@code report.level} (default {@code INFO}).
+ * <p>
+ * Levels from lowest to highest: {@code DEBUG}, {@code INFO}, {@code PASS} and {@code SKIP}, {@code WARNING},
+ * {@code FAIL} and {@code ERROR}, {@code FATAL}. With {@code report.level=WARNING} a nightly run keeps its warnings
+ * and failures, and the step methods return before building any message for the others.
+ */
+public class ReportLevel {
+    private static final String LEVEL_VARIABLE = "report.level";
+    private static volatile Status level = Status.valueOf(System.getProperty(LEVEL_VARIABLE, Status.INFO.name()).toUpperCase());
+    private static volatile int threshold = rank(level);
+
+    private ReportLevel() { }
+
+    public static Status get() {
+        return level;
+    }
+
+    /**
+     * @param level Lowest status of the steps to report
+     */
+    public static void set(Status level) {
+        ReportLevel.level = level;
+        ReportLevel.threshold = rank(level);
+    }
+
+    /**
+     * @param status Status of a step
+     * @return True when a step of this status is reported
+     */
+    public static boolean isEnabled(Status status) {
+        return rank(status) >= threshold;
+    }
+
+    private static int rank(Status status) {
+        switch (status) {
+            case DEBUG:
+                return 0;
+            case INFO:
+                return 1;
+            case PASS:
+            case SKIP:
+                return 2;
+            case WARNING:
+                return 3;
+            case FAIL:
+            case ERROR:
+                return 4;
+            default:
+                return 5;
+        }
+    }
+}
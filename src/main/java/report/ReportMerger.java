@@ -0,0 +1,189 @@
+package report;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Combine the result logs of the shards of a suite into one result log and one HTML report.
+ * <p>
+ * The logs are merged by timestamp, reading one record of each shard at a time, so memory use depends on the number
+ * of shards and not on their size. Test ids are prefixed with the index of their shard to stay unique, and the
+ * {@link JsonlReportRenderer.Summary} of the merged log counts every shard: wall-clock duration from the first to the
+ * last record of any shard, test time summed over all of them.
+ * <pre>
+ * java report.ReportMerger TestResult/Automation_Report.jsonl TestResult/*_shard-*.jsonl
+ * java report.ReportMerger TestResult/Automation_Report.jsonl TestResult
+ * </pre>
+ */
+public class ReportMerger {
+    private static final Logger LOGGER = Logger.getLogger(ReportMerger.class);
+
+    private ReportMerger() { }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: ReportMerger <merged.jsonl> <shard.jsonl|directory>...");
+            System.exit(2);
+        }
+        Path output = Paths.get(args[0]);
+        List<Path> shards = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            shards.addAll(findShards(Paths.get(args[i])));
+        }
+        shards.remove(output);
+        System.out.println(mergeAndRender(shards, output,
+                output.resolveSibling(output.getFileName().toString().replaceAll("\\.jsonl$", "") + ".html")));
+    }
+
+    /**
+     * @param path Result log, or directory of the shard result logs ({@code *_shard-*.jsonl})
+     * @return Result logs found
+     * @throws IOException IO Exception
+     */
+    public static List<Path> findShards(Path path) throws IOException {
+        List<Path> shards = new ArrayList<>();
+        if (!Files.isDirectory(path)) {
+            shards.add(path);
+            return shards;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(path, "*_shard-*.jsonl")) {
+            for (Path file : files) {
+                shards.add(file);
+            }
+        }
+        shards.sort(Comparator.naturalOrder());
+        return shards;
+    }
+
+    /**
+     * @param shards Result logs of the shards
+     * @param output Merged result log to write
+     * @param html   HTML report to render from the merged log
+     * @return Totals of all the shards
+     * @throws IOException IO Exception
+     */
+    public static JsonlReportRenderer.Summary mergeAndRender(List<Path> shards, Path output, Path html) throws IOException {
+        merge(shards, output);
+        return JsonlReportRenderer.render(output, html);
+    }
+
+    /**
+     * @param shards Result logs of the shards
+     * @param output Merged result log to write
+     * @return Number of records written
+     * @throws IOException IO Exception
+     */
+    public static long merge(List<Path> shards, Path output) throws IOException {
+        if (output.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(output.toAbsolutePath().getParent());
+        }
+        PriorityQueue<ShardReader> heads = new PriorityQueue<>(
+                Comparator.comparingLong((ShardReader reader) -> reader.timestamp).thenComparingInt(reader -> reader.index));
+        long records = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            try {
+                String name = null;
+                for (int i = 0; i < shards.size(); i++) {
+                    ShardReader reader = new ShardReader(i, shards.get(i));
+                    if (reader.next()) {
+                        heads.add(reader);
+                        if (name == null && "RUN".equals(reader.record.get("type").getAsString()) && reader.record.has("name")) {
+                            name = reader.record.get("name").getAsString();
+                        }
+                    } else {
+                        reader.close();
+                    }
+                }
+                JsonObject run = new JsonObject();
+                run.addProperty("type", "RUN");
+                run.addProperty("ts", heads.isEmpty() ? System.currentTimeMillis() : heads.peek().timestamp);
+                run.addProperty("name", name == null ? ExtentManager.reportFileName : name);
+                run.addProperty("shards", shards.size());
+                out.write(run.toString());
+                out.write('\n');
+                while (!heads.isEmpty()) {
+                    ShardReader reader = heads.poll();
+                    JsonObject record = reader.record;
+                    if (record.has("id")) {
+                        record.addProperty("id", reader.index + ":" + record.get("id").getAsString());
+                    }
+                    record.addProperty("shardIndex", reader.index);
+                    out.write(record.toString());
+                    out.write('\n');
+                    records++;
+                    if (reader.next()) {
+                        heads.add(reader);
+                    } else {
+                        reader.close();
+                    }
+                }
+            } finally {
+                for (ShardReader reader : heads) {
+                    reader.close();
+                }
+            }
+        }
+        LOGGER.info(String.format("Merged %d record(s) of %d shard(s) into %s", records, shards.size(), output));
+        return records;
+    }
+
+    private static class ShardReader implements Closeable {
+        private final int index;
+        private final Path path;
+        private final BufferedReader reader;
+        private JsonObject record;
+        private long timestamp;
+
+        private ShardReader(int index, Path path) throws IOException {
+            this.index = index;
+            this.path = path;
+            this.reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return False at the end of the shard
+         */
+        private boolean next() throws IOException {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    JsonElement element = JsonParser.parseString(line);
+                    if (element.isJsonObject() && element.getAsJsonObject().has("type") && element.getAsJsonObject().has("ts")) {
+                        record = element.getAsJsonObject();
+                        timestamp = record.get("ts").getAsLong();
+                        return true;
+                    }
+                } catch (JsonParseException e) {
+                    // Last line of a shard cut short by a crash
+                }
+                LOGGER.warn("Skipping a malformed record of " + path);
+            }
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
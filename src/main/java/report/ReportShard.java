@@ -0,0 +1,99 @@
+package report;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Identity of this JVM when a suite is split across Gradle forks or CI nodes.
+ * <p>
+ * The shard id is {@code report.shard} when set, {@code report.shard=auto} takes the Gradle test worker or the process
+ * id. Without it the parallel job index of GitLab ({@code CI_NODE_INDEX}), CircleCI ({@code CIRCLE_NODE_INDEX}) or
+ * Buildkite ({@code BUILDKITE_PARALLEL_JOB}) is used when the job runs more than once. The node name is
+ * {@code report.node}, or the host name.
+ * <p>
+ * Sharded runs tag their report files with the shard id and are combined with {@link ReportMerger}. Runs sharded
+ * with {@code report.shard} also write a JSONL result log by default, a CI parallel job keeps the HTML report unless
+ * {@code report.backend=jsonl} is set.
+ */
+public class ReportShard {
+    private static final String SHARD_VARIABLE = "report.shard";
+    private static final String NODE_VARIABLE = "report.node";
+    private static final String[][] CI_PARALLEL_VARIABLES = {
+            {"CI_NODE_INDEX", "CI_NODE_TOTAL"},
+            {"CIRCLE_NODE_INDEX", "CIRCLE_NODE_TOTAL"},
+            {"BUILDKITE_PARALLEL_JOB", "BUILDKITE_PARALLEL_JOB_COUNT"}};
+    private static String shardId;
+    private static String nodeName;
+    private static boolean resolved;
+
+    private ReportShard() { }
+
+    /**
+     * @return Id of this shard, null when the suite is not sharded
+     */
+    public static synchronized String getShardId() {
+        if (!resolved) {
+            shardId = sanitize(resolveShardId());
+            resolved = true;
+        }
+        return shardId;
+    }
+
+    public static boolean isSharded() {
+        return getShardId() != null;
+    }
+
+    /**
+     * @return True when the shard is set with {@code report.shard}, not only taken from the CI environment
+     */
+    public static boolean isShardRequested() {
+        String shard = System.getProperty(SHARD_VARIABLE);
+        return shard != null && !shard.isEmpty();
+    }
+
+    public static synchronized String getNodeName() {
+        if (nodeName == null) {
+            nodeName = System.getProperty(NODE_VARIABLE);
+        }
+        if (nodeName == null) {
+            try {
+                nodeName = InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException e) {
+                nodeName = System.getenv().getOrDefault("HOSTNAME", System.getenv().getOrDefault("COMPUTERNAME", "unknown"));
+            }
+        }
+        return nodeName;
+    }
+
+    /**
+     * @param name Report file name
+     * @return Name tagged with the shard id, unchanged when the suite is not sharded
+     */
+    public static String tag(String name) {
+        return isSharded() ? name + "_shard-" + getShardId() : name;
+    }
+
+    private static String resolveShardId() {
+        String shard = System.getProperty(SHARD_VARIABLE);
+        if ("auto".equalsIgnoreCase(shard)) {
+            String worker = System.getProperty("org.gradle.test.worker");
+            return worker != null ? "w" + worker : "p" + ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+        }
+        if (shard != null && !shard.isEmpty()) {
+            return shard;
+        }
+        for (String[] variables : CI_PARALLEL_VARIABLES) {
+            String index = System.getenv(variables[0]);
+            String total = System.getenv(variables[1]);
+            if (index != null && total != null && !"1".equals(total.trim())) {
+                return index.trim();
+            }
+        }
+        return null;
+    }
+
+    private static String sanitize(String shard) {
+        return shard == null ? null : shard.replaceAll("[^A-Za-z0-9._-]", "-");
+    }
+}
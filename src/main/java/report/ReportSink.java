@@ -0,0 +1,19 @@
+package report;
+
+/**
+ * Destination of report events. {@link ReportEventPipeline} calls it from one thread at a time, mostly its consumer
+ */
+public interface ReportSink {
+
+    /**
+     * Apply an event to the report model
+     *
+     * @param event Report event
+     */
+    void accept(ReportEvent event);
+
+    /**
+     * Write what was accepted so far to the report output
+     */
+    void flush();
+}
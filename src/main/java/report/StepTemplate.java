@@ -0,0 +1,111 @@
+package report;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Message pattern with {@code {}} placeholders, split once into its literal parts so that formatting is a single
+ * pre-sized append of the parts and the arguments. A placeholder without argument is kept as {@code {}}.
+ * <pre>
+ * StepTemplate.of("Visit {} exported to {}").format(visitId, remotePath);
+ * </pre>
+ */
+public final class StepTemplate {
+    private static final String PLACEHOLDER = "{}";
+    private static final int MAX_CACHED_TEMPLATES = 1024;
+    private static final Map<String, StepTemplate> templates = new ConcurrentHashMap<>();
+
+    private final String[] literals;
+    private final int literalLength;
+
+    private StepTemplate(String[] literals) {
+        this.literals = literals;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * @param pattern Message pattern, usually a constant
+     * @return Compiled pattern, shared by every caller of the same pattern
+     */
+    public static StepTemplate of(String pattern) {
+        StepTemplate template = templates.get(pattern);
+        if (template == null) {
+            template = compile(pattern);
+            if (templates.size() < MAX_CACHED_TEMPLATES) {
+                templates.putIfAbsent(pattern, template);
+            }
+        }
+        return template;
+    }
+
+    /**
+     * @param pattern Message pattern
+     * @return Compiled pattern, not cached
+     */
+    public static StepTemplate compile(String pattern) {
+        int count = 0;
+        for (int i = pattern.indexOf(PLACEHOLDER); i >= 0; i = pattern.indexOf(PLACEHOLDER, i + PLACEHOLDER.length())) {
+            count++;
+        }
+        String[] literals = new String[count + 1];
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            int end = pattern.indexOf(PLACEHOLDER, start);
+            literals[i] = pattern.substring(start, end);
+            start = end + PLACEHOLDER.length();
+        }
+        literals[count] = pattern.substring(start);
+        return new StepTemplate(literals);
+    }
+
+    /**
+     * @return Number of placeholders
+     */
+    public int getArity() {
+        return literals.length - 1;
+    }
+
+    public String format(Object arg) {
+        if (literals.length == 1) {
+            return literals[0];
+        }
+        String value = String.valueOf(arg);
+        StringBuilder message = new StringBuilder(literalLength + value.length() + 16 * (literals.length - 2));
+        message.append(literals[0]).append(value).append(literals[1]);
+        return this.appendRemaining(message, 2);
+    }
+
+    public String format(Object arg1, Object arg2) {
+        if (literals.length < 3) {
+            return this.format(arg1);
+        }
+        String value1 = String.valueOf(arg1);
+        String value2 = String.valueOf(arg2);
+        StringBuilder message = new StringBuilder(literalLength + value1.length() + value2.length() + 16 * (literals.length - 3));
+        message.append(literals[0]).append(value1).append(literals[1]).append(value2).append(literals[2]);
+        return this.appendRemaining(message, 3);
+    }
+
+    public String format(Object... args) {
+        if (literals.length == 1) {
+            return literals[0];
+        }
+        StringBuilder message = new StringBuilder(literalLength + 16 * (literals.length - 1));
+        message.append(literals[0]);
+        for (int i = 1; i < literals.length; i++) {
+            message.append(i <= args.length ? String.valueOf(args[i - 1]) : PLACEHOLDER).append(literals[i]);
+        }
+        return message.toString();
+    }
+
+    private String appendRemaining(StringBuilder message, int from) {
+        for (int i = from; i < literals.length; i++) {
+            message.append(PLACEHOLDER).append(literals[i]);
+        }
+        return message.toString();
+    }
+}
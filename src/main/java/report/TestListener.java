@@ -1,5 +1,6 @@
 package report;
 
+import com.aventstack.extentreports.ExtentTest;
 import com.aventstack.extentreports.Status;
 import com.sandata.core.Wrapper;
 import com.sandata.core.config.TestContext;
@@ -55,7 +56,9 @@ public class TestListener implements ITestListener {
 
     @Override
     public void onTestSuccess(ITestResult iTestResult) {
-        ExtentTestManager.getTest().log(Status.PASS, iTestResult.getMethod().getMethodName());
+        ReportEventPipeline.getInstance().log(ExtentTestManager.getTest(iTestResult), Status.PASS,
+                iTestResult.getMethod().getMethodName());
+        ExtentTestManager.endTest(iTestResult);
     }
 
     @Override
@@ -63,12 +66,19 @@ public class TestListener implements ITestListener {
         LOGGER.info("------------------ @Script is failed - Try capture the screenshot if any------------------------");
         String methodName = iTestResult.getMethod().getMethodName().trim();
         LOGGER.info(String.format("%s is failed", methodName));
-        ExtentTestManager.getTest().log(Status.FAIL, iTestResult.getMethod().getMethodName());
-        ExtentTestManager.getTest().fail(iTestResult.getThrowable());
+        ExtentTest test = ExtentTestManager.getTest(iTestResult);
+        ReportEventPipeline.getInstance().log(test, Status.FAIL, iTestResult.getMethod().getMethodName());
+        ReportEventPipeline.getInstance().fail(test, iTestResult.getThrowable());
         if (TestContext.get().getConfiguration().getTestType().equalsIgnoreCase(TestType.UI)){
-            new Wrapper().getScreenShotOnFailure(iTestResult.getMethod().getMethodName());
-            LOGGER.info("Successfully capture screenshot on failure");
+            if (FailureArtifactStore.isEnabled()) {
+                FailureArtifactStore.getInstance().captureScreenshot(test, methodName, TestContext.get().getDriver());
+                LOGGER.info("Screenshot on failure submitted");
+            } else {
+                new Wrapper().getScreenShotOnFailure(iTestResult.getMethod().getMethodName());
+                LOGGER.info("Successfully capture screenshot on failure");
+            }
         }
+        ExtentTestManager.endTest(iTestResult);
 
 //        if (result.getStatus() == ITestResult.FAILURE) {
 ////			logger.log(LogStatus.FAIL, result.getThrowable());
@@ -84,11 +94,13 @@ public class TestListener implements ITestListener {
     @Override
     public void onTestSkipped(ITestResult iTestResult) {
         //TODO: reserved
+        ExtentTestManager.endTest(iTestResult);
     }
 
     @Override
     public void onTestFailedButWithinSuccessPercentage(ITestResult iTestResult) {
         //TODO: reserved
+        ExtentTestManager.endTest(iTestResult);
     }
 
     @Override
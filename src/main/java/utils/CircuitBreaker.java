@@ -0,0 +1,102 @@
+package utils;
+
+import exceptions.CircuitBreakerOpenException;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fail fast on a service that keeps failing. After {@code -Dretry.circuitBreaker.failureThreshold} consecutive
+ * failures (default 5) calls are refused for {@code -Dretry.circuitBreaker.openMillis} (default 30s), then a
+ * single trial call decides whether the service is back.
+ */
+public class CircuitBreaker {
+    public static final String FAILURE_THRESHOLD_VARIABLE = "retry.circuitBreaker.failureThreshold";
+    public static final String OPEN_MILLIS_VARIABLE = "retry.circuitBreaker.openMillis";
+    private static final Logger LOGGER = LoggerManager.getInstance();
+    private static final Map<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openMillis;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInProgress;
+
+    public CircuitBreaker(String name, int failureThreshold, long openMillis) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Get the breaker shared by every caller of a service
+     *
+     * @param name Service name, e.g. an SFTP server
+     * @return Circuit breaker
+     */
+    public static CircuitBreaker named(String name) {
+        return BREAKERS.computeIfAbsent(name, k -> new CircuitBreaker(k,
+                Integer.getInteger(FAILURE_THRESHOLD_VARIABLE, 5), Long.getLong(OPEN_MILLIS_VARIABLE, 30000L)));
+    }
+
+    /**
+     * Ask for permission to call the service
+     *
+     * @throws CircuitBreakerOpenException CircuitBreakerOpen Exception when the service is considered down
+     */
+    public synchronized void acquire() {
+        if (state == State.OPEN) {
+            long remaining = openedAt + openMillis - System.currentTimeMillis();
+            if (remaining > 0) {
+                throw new CircuitBreakerOpenException("Circuit breaker " + name + " is open after " + consecutiveFailures
+                        + " consecutive failures, retry in " + remaining + " ms");
+            }
+            state = State.HALF_OPEN;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialInProgress) {
+                throw new CircuitBreakerOpenException("Circuit breaker " + name + " is waiting for a trial call");
+            }
+            trialInProgress = true;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            LOGGER.info("Circuit breaker {} closed", name);
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInProgress = false;
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        trialInProgress = false;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) {
+                LOGGER.warn("Circuit breaker {} opened after {} consecutive failures", name, consecutiveFailures);
+            }
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * End a call without a verdict on the service, so that a half-open breaker accepts another trial call
+     */
+    public synchronized void release() {
+        trialInProgress = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+}
@@ -0,0 +1,219 @@
+package utils;
+
+import lombok.extern.log4j.Log4j;
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.common.session.helpers.AbstractSession;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.auth.pubkey.AcceptAllPublickeyAuthenticator;
+import org.apache.sshd.server.config.keys.AuthorizedKeysAuthenticator;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.sftp.server.FileHandle;
+import org.apache.sshd.sftp.server.SftpEventListener;
+import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Local SFTP server backed by a folder, standing in for the real servers so that SFTP suites run offline.
+ * <p>
+ * Turned on with {@code -Dsftp.embedded=true}: every {@link SFTP} helper then connects to this server whatever
+ * its configuration says, see {@link SftpSessionPool}. Remote absolute paths are resolved under the root folder.
+ * <p>
+ * Settings:
+ * <ul>
+ * <li>{@code -Dsftp.embedded.root}: root folder, a new temporary folder by default</li>
+ * <li>{@code -Dsftp.embedded.port}: port, a free port by default</li>
+ * <li>{@code -Dsftp.embedded.latencyMillis}: delay added to every SFTP request, 0 by default</li>
+ * <li>{@code -Dsftp.embedded.bytesPerSecond}: read and write bandwidth of each connection, unlimited by default</li>
+ * <li>{@code -Dsftp.embedded.authorizedKeys}: authorized_keys file for key authentication, any key is accepted
+ * by default</li>
+ * </ul>
+ * Any password is accepted until users are added with {@link #addUser(String, String)}.
+ */
+@Log4j
+public class EmbeddedSftpServer implements AutoCloseable {
+    public static final String ENABLED_VARIABLE = "sftp.embedded";
+    public static final String ROOT_VARIABLE = "sftp.embedded.root";
+    public static final String PORT_VARIABLE = "sftp.embedded.port";
+    public static final String LATENCY_VARIABLE = "sftp.embedded.latencyMillis";
+    public static final String BANDWIDTH_VARIABLE = "sftp.embedded.bytesPerSecond";
+    public static final String AUTHORIZED_KEYS_VARIABLE = "sftp.embedded.authorizedKeys";
+    private static EmbeddedSftpServer instance;
+
+    private final SshServer server;
+    private final Path root;
+    private final Map<String, String> users = new ConcurrentHashMap<>();
+    private volatile long latencyMillis;
+    private volatile long bytesPerSecond;
+
+    private EmbeddedSftpServer(Path root, int port, Path authorizedKeys) throws IOException {
+        this.root = Files.createDirectories(root).toAbsolutePath();
+        this.server = SshServer.setUpDefaultServer();
+        server.setHost("localhost");
+        server.setPort(port);
+        server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider());
+        server.setPasswordAuthenticator((username, password, session) ->
+                users.isEmpty() || Objects.equals(users.get(username), password));
+        server.setPublickeyAuthenticator(authorizedKeys == null
+                ? AcceptAllPublickeyAuthenticator.INSTANCE
+                : new AuthorizedKeysAuthenticator(authorizedKeys));
+        server.setFileSystemFactory(new VirtualFileSystemFactory(this.root));
+
+        SftpSubsystemFactory sftpFactory = new SftpSubsystemFactory.Builder().build();
+        sftpFactory.addSftpEventListener(new ShapingListener());
+        server.setSubsystemFactories(Collections.singletonList(sftpFactory));
+        server.start();
+        log.info("Embedded SFTP server started on port " + server.getPort() + " with root " + this.root);
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(ENABLED_VARIABLE);
+    }
+
+    /**
+     * Get the server configured by system properties, started on first use and stopped when the JVM exits
+     *
+     * @return Embedded server
+     * @throws IOException When the server cannot start
+     */
+    public static synchronized EmbeddedSftpServer getInstance() throws IOException {
+        if (instance == null) {
+            String rootDir = System.getProperty(ROOT_VARIABLE);
+            String authorizedKeys = System.getProperty(AUTHORIZED_KEYS_VARIABLE);
+            EmbeddedSftpServer started = start(rootDir == null ? Files.createTempDirectory("sftp-embedded") : Paths.get(rootDir),
+                    Integer.getInteger(PORT_VARIABLE, 0), authorizedKeys == null ? null : Paths.get(authorizedKeys));
+            started.setLatencyMillis(Long.getLong(LATENCY_VARIABLE, 0L));
+            started.setBytesPerSecond(Long.getLong(BANDWIDTH_VARIABLE, 0L));
+            Runtime.getRuntime().addShutdownHook(new Thread(started::close, "sftp-embedded-shutdown"));
+            instance = started;
+        }
+        return instance;
+    }
+
+    /**
+     * Start a server independent of the system properties, e.g. for a benchmark with its own settings
+     *
+     * @param root           Root folder
+     * @param port           Port, 0 for a free port
+     * @param authorizedKeys authorized_keys file, null to accept any key
+     * @return Started server, to be closed by the caller
+     * @throws IOException When the server cannot start
+     */
+    public static EmbeddedSftpServer start(Path root, int port, Path authorizedKeys) throws IOException {
+        return new EmbeddedSftpServer(root, port, authorizedKeys);
+    }
+
+    public int getPort() {
+        return server.getPort();
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * @param remotePath Remote absolute path
+     * @return Local file behind the remote path
+     */
+    public Path resolve(String remotePath) {
+        return root.resolve(remotePath.replaceFirst("^/+", "")).normalize();
+    }
+
+    /**
+     * Accept password authentication only for the added users from now on
+     *
+     * @param username User name
+     * @param password Password
+     */
+    public void addUser(String username, String password) {
+        users.put(username, password);
+    }
+
+    /**
+     * @param latencyMillis Delay added to every SFTP request, can be changed while the server runs
+     */
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = Math.max(0, latencyMillis);
+    }
+
+    /**
+     * @param bytesPerSecond Read and write bandwidth of each connection, 0 for unlimited, can be changed while
+     *                       the server runs
+     */
+    public void setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = Math.max(0, bytesPerSecond);
+    }
+
+    /**
+     * Drop every open connection, as a network failure would, e.g. to check that a transfer resumes
+     *
+     * @return Number of dropped connections
+     */
+    public int disconnectAll() {
+        List<AbstractSession> sessions = server.getActiveSessions();
+        sessions.forEach(session -> session.close(true));
+        log.info("Embedded SFTP server dropped " + sessions.size() + " connection(s)");
+        return sessions.size();
+    }
+
+    @Override
+    public void close() {
+        try {
+            server.stop(true);
+            log.info("Embedded SFTP server stopped");
+        } catch (IOException e) {
+            log.error("Cannot stop embedded SFTP server: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Delays requests and data to simulate a remote link. The server handles the requests of a connection one
+     * at a time, so a delay on one request holds back the following ones as a slow link would.
+     */
+    private class ShapingListener implements SftpEventListener {
+
+        @Override
+        public void received(ServerSession session, int type, int id) {
+            pause(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+        }
+
+        @Override
+        public void reading(ServerSession session, String remoteHandle, FileHandle localHandle, long offset,
+                            byte[] data, int dataOffset, int dataLen) {
+            throttle(dataLen);
+        }
+
+        @Override
+        public void writing(ServerSession session, String remoteHandle, FileHandle localHandle, long offset,
+                            byte[] data, int dataOffset, int dataLen) {
+            throttle(dataLen);
+        }
+
+        private void throttle(int bytes) {
+            long bandwidth = bytesPerSecond;
+            if (bandwidth > 0) {
+                pause(TimeUnit.SECONDS.toNanos(bytes) / bandwidth);
+            }
+        }
+
+        private void pause(long nanos) {
+            long deadline = System.nanoTime() + nanos;
+            long remaining = nanos;
+            while (remaining > 0 && !Thread.currentThread().isInterrupted()) {
+                LockSupport.parkNanos(remaining);
+                remaining = deadline - System.nanoTime();
+            }
+        }
+    }
+}
@@ -0,0 +1,715 @@
+package utils;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.BuiltinExchangeType;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.client.ReturnListener;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * In-process stand-in for a RabbitMQ broker, so suites using {@link RabbitMQ} can run without network.
+ * It is enabled with {@code -Drabbitmq.embedded=true}: the connection manager then hands out connections
+ * to this broker instead of opening one with the connection factory, the helpers themselves do not change.
+ * <p>
+ * Only what the helpers use is supported: queue declare (passive or not), purge, delete and bind,
+ * direct/fanout/topic exchanges, basicGet, basicConsume with prefetch, acks, nacks, publish, publisher
+ * confirms and returns of unroutable mandatory messages. Any other channel method throws {@link UnsupportedOperationException}. Queues are declared on
+ * first use unless {@code -Drabbitmq.embedded.autoDeclare=false}. A passive declare of a missing queue fails like
+ * on a real broker, {@code -Drabbitmq.embedded.autoDeclarePassive=true} declares it instead.
+ */
+public class InMemoryRabbitMQ {
+    public static final String AUTO_DECLARE_VARIABLE = "rabbitmq.embedded.autoDeclare";
+    public static final String AUTO_DECLARE_PASSIVE_VARIABLE = "rabbitmq.embedded.autoDeclarePassive";
+    private static final Logger LOGGER = LoggerManager.getInstance();
+    private static InMemoryRabbitMQ instance;
+
+    private final boolean autoDeclare;
+    private final boolean autoDeclarePassive;
+    private final Map<String, MemoryQueue> queues = new HashMap<>();
+    private final Map<String, String> exchangeTypes = new HashMap<>();
+    private final Map<String, List<Binding>> bindings = new HashMap<>();
+    private final AtomicInteger connectionCounter = new AtomicInteger();
+    private final AtomicInteger consumerCounter = new AtomicInteger();
+
+    InMemoryRabbitMQ(boolean autoDeclare, boolean autoDeclarePassive) {
+        this.autoDeclare = autoDeclare;
+        this.autoDeclarePassive = autoDeclarePassive;
+    }
+
+    public static synchronized InMemoryRabbitMQ getInstance() {
+        if (instance == null) {
+            instance = new InMemoryRabbitMQ(Boolean.parseBoolean(System.getProperty(AUTO_DECLARE_VARIABLE, "true")),
+                    Boolean.getBoolean(AUTO_DECLARE_PASSIVE_VARIABLE));
+        }
+        return instance;
+    }
+
+    public Connection newConnection() {
+        MemoryConnection connection = new MemoryConnection(connectionCounter.incrementAndGet());
+        return connection.proxy;
+    }
+
+    public synchronized void declareQueue(String queueName) {
+        queues.computeIfAbsent(queueName, MemoryQueue::new);
+    }
+
+    /**
+     * @param queueName Queue name
+     * @return Number of messages ready on the queue, 0 when it does not exist
+     */
+    public synchronized int messageCount(String queueName) {
+        MemoryQueue queue = queues.get(queueName);
+        return queue == null ? 0 : queue.ready.size();
+    }
+
+    /**
+     * Drop every queue, exchange and binding
+     */
+    public synchronized void reset() {
+        queues.clear();
+        exchangeTypes.clear();
+        bindings.clear();
+    }
+
+    private MemoryQueue queue(String queueName, boolean declare) {
+        MemoryQueue queue = queues.get(queueName);
+        if (queue == null && declare) {
+            queue = new MemoryQueue(queueName);
+            queues.put(queueName, queue);
+        }
+        return queue;
+    }
+
+    private List<MemoryQueue> route(String exchange, String routingKey) throws IOException {
+        List<MemoryQueue> targets = new ArrayList<>();
+        if (exchange.isEmpty()) {
+            MemoryQueue queue = queue(routingKey, autoDeclare);
+            if (queue != null) {
+                targets.add(queue);
+            }
+            return targets;
+        }
+        String type = exchangeTypes.get(exchange);
+        if (type == null) {
+            throw new IOException("NOT_FOUND - no exchange '" + exchange + "' in the in-memory broker");
+        }
+        for (Binding binding : bindings.getOrDefault(exchange, new ArrayList<>())) {
+            if (binding.matches(type, routingKey)) {
+                targets.add(queue(binding.queueName, true));
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * Topic binding key as a pattern matched against {@code "." + routingKey}: every word consumes its leading dot,
+     * {@code *} is exactly one word and {@code #} zero or more words, so {@code a.#} also matches {@code a}
+     */
+    private static Pattern topicPattern(String bindingKey) {
+        StringBuilder regex = new StringBuilder();
+        for (String word : bindingKey.split("\\.", -1)) {
+            if ("#".equals(word)) {
+                regex.append("(?:\\.[^.]*)*");
+            } else if ("*".equals(word)) {
+                regex.append("\\.[^.]*");
+            } else {
+                regex.append("\\.").append(Pattern.quote(word));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Method reply of the broker, e.g. {@link AMQP.Queue.DeclareOk}, without depending on the client internals
+     *
+     * @param type   Reply interface
+     * @param values Getter name and value pairs
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T reply(Class<T> type, Object... values) {
+        Map<String, Object> properties = new HashMap<>();
+        for (int i = 0; i < values.length; i += 2) {
+            properties.put((String) values[i], values[i + 1]);
+        }
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "protocolMethodName":
+                    return type.getEnclosingClass().getSimpleName().toLowerCase() + "." + type.getSimpleName();
+                case "toString":
+                    return type.getEnclosingClass().getSimpleName() + "." + type.getSimpleName() + properties;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    if (properties.containsKey(method.getName())) {
+                        return properties.get(method.getName());
+                    }
+                    throw new UnsupportedOperationException(type.getSimpleName() + "." + method.getName()
+                            + " is not supported by the in-memory broker");
+            }
+        });
+    }
+
+    /**
+     * Push ready messages to consumers that have room under their prefetch, round robin
+     */
+    private void dispatch(MemoryQueue queue) {
+        while (!queue.ready.isEmpty() && !queue.consumers.isEmpty()) {
+            ConsumerRegistration registration = null;
+            for (int i = 0; i < queue.consumers.size() && registration == null; i++) {
+                ConsumerRegistration candidate = queue.consumers.get((queue.nextConsumer + i) % queue.consumers.size());
+                if (candidate.hasCapacity()) {
+                    registration = candidate;
+                    queue.nextConsumer = (queue.nextConsumer + i + 1) % queue.consumers.size();
+                }
+            }
+            if (registration == null) {
+                return;
+            }
+            StoredMessage message = queue.ready.poll();
+            MemoryChannel channel = registration.channel;
+            long deliveryTag = channel.nextDeliveryTag++;
+            if (!registration.autoAck) {
+                registration.unacked++;
+                channel.unacked.put(deliveryTag, new Unacked(queue, message, registration));
+            }
+            Envelope envelope = new Envelope(deliveryTag, message.redelivered, message.exchange, message.routingKey);
+            ConsumerRegistration target = registration;
+            channel.callback(() -> target.consumer.handleDelivery(target.tag, envelope, message.properties, message.body));
+        }
+    }
+
+    private class MemoryConnection implements InvocationHandler {
+        private final int number;
+        private final Connection proxy;
+        private final List<MemoryChannel> channels = new CopyOnWriteArrayList<>();
+        private final AtomicInteger channelCounter = new AtomicInteger();
+        private volatile boolean open = true;
+
+        private MemoryConnection(int number) {
+            this.number = number;
+            this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "createChannel":
+                    if (!open) {
+                        throw new IOException("In-memory connection is closed");
+                    }
+                    MemoryChannel channel = new MemoryChannel(this, channelCounter.incrementAndGet());
+                    channels.add(channel);
+                    return channel.proxy;
+                case "isOpen":
+                    return open;
+                case "close":
+                case "abort":
+                    open = false;
+                    for (MemoryChannel memoryChannel : channels) {
+                        memoryChannel.close();
+                    }
+                    channels.clear();
+                    return null;
+                case "getClientProvidedName":
+                    return "in-memory-" + number;
+                case "addShutdownListener":
+                case "removeShutdownListener":
+                case "addBlockedListener":
+                    return null;
+                case "toString":
+                    return "InMemoryRabbitMQ connection " + number;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    throw new UnsupportedOperationException("Connection." + method.getName()
+                            + " is not supported by the in-memory broker");
+            }
+        }
+    }
+
+    private class MemoryChannel implements InvocationHandler {
+        private final MemoryConnection connection;
+        private final int number;
+        private final Channel proxy;
+        private final ExecutorService dispatcher;
+        private final NavigableMap<Long, Unacked> unacked = new TreeMap<>();
+        private final Map<String, ConsumerRegistration> consumers = new LinkedHashMap<>();
+        private final List<ConfirmListener> confirmListeners = new CopyOnWriteArrayList<>();
+        private final List<ReturnListener> returnListeners = new CopyOnWriteArrayList<>();
+        private long nextDeliveryTag = 1;
+        private long nextPublishSeqNo;
+        private int prefetch;
+        private volatile boolean open = true;
+
+        private MemoryChannel(MemoryConnection connection, int number) {
+            this.connection = connection;
+            this.number = number;
+            this.proxy = (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(),
+                    new Class<?>[]{Channel.class}, this);
+            // One thread per channel keeps deliveries and confirms in order, like the real client
+            this.dispatcher = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "in-memory-rabbitmq-" + connection.number + "-" + number);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "isOpen":
+                    return open;
+                case "close":
+                case "abort":
+                    close();
+                    return null;
+                case "getChannelNumber":
+                    return number;
+                case "getConnection":
+                    return connection.proxy;
+                case "getCloseReason":
+                    return null;
+                case "getNextPublishSeqNo":
+                    synchronized (InMemoryRabbitMQ.this) {
+                        return nextPublishSeqNo;
+                    }
+                case "addShutdownListener":
+                case "removeShutdownListener":
+                    return null;
+                case "addReturnListener":
+                    return addReturnListener(args);
+                case "removeReturnListener":
+                    return returnListeners.remove(args[0]);
+                case "clearReturnListeners":
+                    returnListeners.clear();
+                    return null;
+                case "toString":
+                    return "InMemoryRabbitMQ channel " + connection.number + "/" + number;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    break;
+            }
+            if (!open) {
+                throw new IOException("In-memory channel " + number + " is already closed");
+            }
+            switch (name) {
+                case "confirmSelect":
+                    return confirmSelect();
+                case "addConfirmListener":
+                    return addConfirmListener(args);
+                case "removeConfirmListener":
+                    return confirmListeners.remove(args[0]);
+                case "clearConfirmListeners":
+                    confirmListeners.clear();
+                    return null;
+                case "waitForConfirms":
+                    awaitCallbacks();
+                    return true;
+                case "waitForConfirmsOrDie":
+                    awaitCallbacks();
+                    return null;
+                default:
+                    synchronized (InMemoryRabbitMQ.this) {
+                        return invokeOnBroker(method, args);
+                    }
+            }
+        }
+
+        private Object invokeOnBroker(Method method, Object[] args) throws IOException {
+            switch (method.getName()) {
+                case "queueDeclarePassive": {
+                    MemoryQueue queue = queue((String) args[0], autoDeclarePassive);
+                    if (queue == null) {
+                        throw closeWithError("NOT_FOUND - no queue '" + args[0] + "' in the in-memory broker");
+                    }
+                    return declareOk(queue);
+                }
+                case "queueDeclare": {
+                    String queueName = args == null || args.length == 0 || ((String) args[0]).isEmpty()
+                            ? "amq.gen-" + UUID.randomUUID() : (String) args[0];
+                    return declareOk(queue(queueName, true));
+                }
+                case "queuePurge": {
+                    MemoryQueue queue = existingQueue((String) args[0]);
+                    int count = queue.ready.size();
+                    queue.ready.clear();
+                    return reply(AMQP.Queue.PurgeOk.class, "getMessageCount", count);
+                }
+                case "queueDelete": {
+                    MemoryQueue queue = queues.remove((String) args[0]);
+                    if (queue == null) {
+                        return reply(AMQP.Queue.DeleteOk.class, "getMessageCount", 0);
+                    }
+                    for (ConsumerRegistration registration : queue.consumers) {
+                        registration.channel.consumers.remove(registration.tag);
+                        registration.channel.callback(() -> registration.consumer.handleCancel(registration.tag));
+                    }
+                    return reply(AMQP.Queue.DeleteOk.class, "getMessageCount", queue.ready.size());
+                }
+                case "queueBind":
+                    existingQueue((String) args[0]);
+                    bindings.computeIfAbsent((String) args[1], exchange -> new ArrayList<>())
+                            .add(new Binding((String) args[0], (String) args[2]));
+                    return reply(AMQP.Queue.BindOk.class);
+                case "exchangeDeclare": {
+                    Object type = args[1];
+                    exchangeTypes.put((String) args[0], type instanceof BuiltinExchangeType
+                            ? ((BuiltinExchangeType) type).getType() : String.valueOf(type));
+                    return reply(AMQP.Exchange.DeclareOk.class);
+                }
+                case "messageCount":
+                    return (long) existingQueue((String) args[0]).ready.size();
+                case "consumerCount":
+                    return (long) existingQueue((String) args[0]).consumers.size();
+                case "basicQos":
+                    // basicQos(count), basicQos(count, global) or basicQos(size, count, global)
+                    prefetch = (Integer) (args.length == 3 ? args[1] : args[0]);
+                    return null;
+                case "basicGet":
+                    return basicGet((String) args[0], (Boolean) args[1]);
+                case "basicConsume":
+                    return basicConsume(args);
+                case "basicCancel":
+                    basicCancel((String) args[0]);
+                    return null;
+                case "basicAck":
+                    settle((Long) args[0], (Boolean) args[1], false);
+                    return null;
+                case "basicNack":
+                    settle((Long) args[0], (Boolean) args[1], (Boolean) args[2]);
+                    return null;
+                case "basicReject":
+                    settle((Long) args[0], false, (Boolean) args[1]);
+                    return null;
+                case "basicRecover":
+                    settle(Long.MAX_VALUE, true, true);
+                    return null;
+                case "basicPublish":
+                    // (exchange, routingKey, [mandatory, [immediate,]] properties, body)
+                    basicPublish((String) args[0], (String) args[1], args.length > 4 && (Boolean) args[2],
+                            (AMQP.BasicProperties) args[args.length - 2], (byte[]) args[args.length - 1]);
+                    return null;
+                default:
+                    throw new UnsupportedOperationException("Channel." + method.getName()
+                            + " is not supported by the in-memory broker");
+            }
+        }
+
+        private AMQP.Queue.DeclareOk declareOk(MemoryQueue queue) {
+            return reply(AMQP.Queue.DeclareOk.class, "getQueue", queue.name,
+                    "getMessageCount", queue.ready.size(), "getConsumerCount", queue.consumers.size());
+        }
+
+        private MemoryQueue existingQueue(String queueName) throws IOException {
+            MemoryQueue queue = queue(queueName, autoDeclare);
+            if (queue == null) {
+                throw closeWithError("NOT_FOUND - no queue '" + queueName + "' in the in-memory broker");
+            }
+            return queue;
+        }
+
+        private GetResponse basicGet(String queueName, boolean autoAck) throws IOException {
+            MemoryQueue queue = existingQueue(queueName);
+            StoredMessage message = queue.ready.poll();
+            if (message == null) {
+                return null;
+            }
+            long deliveryTag = nextDeliveryTag++;
+            if (!autoAck) {
+                unacked.put(deliveryTag, new Unacked(queue, message, null));
+            }
+            Envelope envelope = new Envelope(deliveryTag, message.redelivered, message.exchange, message.routingKey);
+            return new GetResponse(envelope, message.properties, message.body, queue.ready.size());
+        }
+
+        private String basicConsume(Object[] args) throws IOException {
+            // (queue, consumer), (queue, autoAck, consumer) or (queue, autoAck, consumerTag, consumer)
+            if (!(args[args.length - 1] instanceof Consumer)) {
+                throw new UnsupportedOperationException("Only basicConsume with a Consumer is supported by the in-memory broker");
+            }
+            MemoryQueue queue = existingQueue((String) args[0]);
+            boolean autoAck = args.length > 2 && (Boolean) args[1];
+            String tag = args.length >= 4 && args[2] instanceof String && !((String) args[2]).isEmpty()
+                    ? (String) args[2] : "amq.ctag-in-memory-" + consumerCounter.incrementAndGet();
+            ConsumerRegistration registration = new ConsumerRegistration(tag, this, queue,
+                    (Consumer) args[args.length - 1], autoAck, prefetch);
+            consumers.put(tag, registration);
+            queue.consumers.add(registration);
+            callback(() -> registration.consumer.handleConsumeOk(tag));
+            dispatch(queue);
+            return tag;
+        }
+
+        private void basicCancel(String tag) throws IOException {
+            ConsumerRegistration registration = consumers.remove(tag);
+            if (registration == null) {
+                throw closeWithError("NOT_FOUND - unknown consumer tag '" + tag + "'");
+            }
+            registration.queue.consumers.remove(registration);
+            callback(() -> registration.consumer.handleCancelOk(tag));
+        }
+
+        private void basicPublish(String exchange, String routingKey, boolean mandatory, AMQP.BasicProperties properties,
+                                  byte[] body) throws IOException {
+            List<MemoryQueue> targets = route(exchange, routingKey);
+            for (MemoryQueue queue : targets) {
+                queue.ready.add(new StoredMessage(exchange, routingKey, properties, body.clone(), false));
+                dispatch(queue);
+            }
+            if (mandatory && targets.isEmpty()) {
+                // Like the broker, the return comes before the confirm of the same message
+                byte[] returned = body.clone();
+                callback(() -> {
+                    for (ReturnListener listener : returnListeners) {
+                        listener.handleReturn(AMQP.NO_ROUTE, "NO_ROUTE", exchange, routingKey, properties, returned);
+                    }
+                });
+            }
+            if (nextPublishSeqNo > 0) {
+                // Routing is synchronous, so the message is confirmed as soon as it is published
+                long seqNo = nextPublishSeqNo++;
+                callback(() -> {
+                    for (ConfirmListener listener : confirmListeners) {
+                        listener.handleAck(seqNo, false);
+                    }
+                });
+            }
+        }
+
+        private void settle(long deliveryTag, boolean multiple, boolean requeue) throws IOException {
+            Map<Long, Unacked> settled = multiple ? new TreeMap<>(unacked.headMap(deliveryTag, true)) : new TreeMap<>();
+            if (!multiple) {
+                Unacked single = unacked.get(deliveryTag);
+                if (single == null) {
+                    throw closeWithError("PRECONDITION_FAILED - unknown delivery tag " + deliveryTag);
+                }
+                settled.put(deliveryTag, single);
+            }
+            List<Unacked> entries = new ArrayList<>(settled.values());
+            settled.keySet().forEach(unacked::remove);
+
+            Set<MemoryQueue> touched = new HashSet<>();
+            for (int i = entries.size() - 1; i >= 0; i--) {
+                Unacked entry = entries.get(i);
+                if (entry.registration != null) {
+                    entry.registration.unacked--;
+                }
+                if (requeue && queues.get(entry.queue.name) == entry.queue) {
+                    // Walking from the newest tag keeps the original order at the head of the queue
+                    entry.queue.ready.addFirst(entry.message.redelivered());
+                }
+                touched.add(entry.queue);
+            }
+            touched.forEach(InMemoryRabbitMQ.this::dispatch);
+        }
+
+        private Object confirmSelect() {
+            synchronized (InMemoryRabbitMQ.this) {
+                if (nextPublishSeqNo == 0) {
+                    nextPublishSeqNo = 1;
+                }
+            }
+            return reply(AMQP.Confirm.SelectOk.class);
+        }
+
+        private Object addConfirmListener(Object[] args) {
+            if (!(args.length == 1 && args[0] instanceof ConfirmListener)) {
+                throw new UnsupportedOperationException("Only ConfirmListener is supported by the in-memory broker");
+            }
+            confirmListeners.add((ConfirmListener) args[0]);
+            return args[0];
+        }
+
+        private Object addReturnListener(Object[] args) {
+            if (!(args.length == 1 && args[0] instanceof ReturnListener)) {
+                throw new UnsupportedOperationException("Only ReturnListener is supported by the in-memory broker");
+            }
+            returnListeners.add((ReturnListener) args[0]);
+            return args[0];
+        }
+
+        private void awaitCallbacks() throws IOException {
+            try {
+                dispatcher.submit(() -> {
+                }).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for confirms", e);
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+        }
+
+        private void callback(Callback callback) {
+            dispatcher.execute(() -> {
+                try {
+                    callback.run();
+                } catch (Exception e) {
+                    LOGGER.error("In-memory broker callback failed on channel {}", number, e);
+                }
+            });
+        }
+
+        /**
+         * Like the real broker, a channel error closes the channel
+         */
+        private IOException closeWithError(String reason) {
+            close();
+            return new IOException(reason);
+        }
+
+        private void close() {
+            synchronized (InMemoryRabbitMQ.this) {
+                if (!open) {
+                    return;
+                }
+                open = false;
+                for (ConsumerRegistration registration : consumers.values()) {
+                    registration.queue.consumers.remove(registration);
+                }
+                consumers.clear();
+                try {
+                    settle(Long.MAX_VALUE, true, true);
+                } catch (IOException e) {
+                    // multiple=true never fails
+                }
+            }
+            connection.channels.remove(this);
+            dispatcher.shutdown();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Callback {
+        void run() throws Exception;
+    }
+
+    private static class MemoryQueue {
+        private final String name;
+        private final Deque<StoredMessage> ready = new ArrayDeque<>();
+        private final List<ConsumerRegistration> consumers = new ArrayList<>();
+        private int nextConsumer;
+
+        private MemoryQueue(String name) {
+            this.name = name;
+        }
+    }
+
+    private static class Binding {
+        private final String queueName;
+        private final String bindingKey;
+        private Pattern topic;
+
+        private Binding(String queueName, String bindingKey) {
+            this.queueName = queueName;
+            this.bindingKey = bindingKey;
+        }
+
+        private boolean matches(String exchangeType, String routingKey) {
+            if ("fanout".equals(exchangeType)) {
+                return true;
+            }
+            if ("topic".equals(exchangeType)) {
+                if (topic == null) {
+                    topic = topicPattern(bindingKey);
+                }
+                return topic.matcher("." + routingKey).matches();
+            }
+            return bindingKey.equals(routingKey);
+        }
+    }
+
+    private static class StoredMessage {
+        private final String exchange;
+        private final String routingKey;
+        private final AMQP.BasicProperties properties;
+        private final byte[] body;
+        private final boolean redelivered;
+
+        private StoredMessage(String exchange, String routingKey, AMQP.BasicProperties properties, byte[] body,
+                              boolean redelivered) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.properties = properties;
+            this.body = body;
+            this.redelivered = redelivered;
+        }
+
+        private StoredMessage redelivered() {
+            return new StoredMessage(exchange, routingKey, properties, body, true);
+        }
+    }
+
+    private static class ConsumerRegistration {
+        private final String tag;
+        private final MemoryChannel channel;
+        private final MemoryQueue queue;
+        private final Consumer consumer;
+        private final boolean autoAck;
+        private final int prefetch;
+        private int unacked;
+
+        private ConsumerRegistration(String tag, MemoryChannel channel, MemoryQueue queue, Consumer consumer,
+                                     boolean autoAck, int prefetch) {
+            this.tag = tag;
+            this.channel = channel;
+            this.queue = queue;
+            this.consumer = consumer;
+            this.autoAck = autoAck;
+            this.prefetch = prefetch;
+        }
+
+        private boolean hasCapacity() {
+            return channel.open && (autoAck || prefetch == 0 || unacked < prefetch);
+        }
+    }
+
+    private static class Unacked {
+        private final MemoryQueue queue;
+        private final StoredMessage message;
+        private final ConsumerRegistration registration;
+
+        private Unacked(MemoryQueue queue, StoredMessage message, ConsumerRegistration registration) {
+            this.queue = queue;
+            this.message = message;
+            this.registration = registration;
+        }
+    }
+}
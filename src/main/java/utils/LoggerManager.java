@@ -10,7 +10,7 @@ public class LoggerManager {
     }
 
     public static synchronized Logger getInstance() {
-        if (logger != null) {
+        if (logger == null) {
             logger = LogManager.getLogger();
         }
         return logger;
@@ -2,88 +2,178 @@ package utils;
 
 import com.google.gson.Gson;
 import com.rabbitmq.client.AMQP;
-import com.rabbitmq.client.Channel;
-import com.rabbitmq.client.Connection;
-import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.GetResponse;
 import exceptions.NoSuchDataException;
 import lombok.SneakyThrows;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeoutException;
 
 public class RabbitMQ {
     private static final Logger LOGGER = LoggerManager.getInstance();
     private static final Gson gson = GsonManager.getInstance();
-    private static final ConnectionFactory FACTORY = new ConnectionFactory();
+    private static final RabbitMQConnectionManager MANAGER = RabbitMQConnectionManager.getInstance();
 
     private RabbitMQ() {
     }
 
     public static int getTotalMessageInQueue(String queueName) throws TimeoutException {
-        int totalMessage = countMessageOnQueue(queueName);
-        int timeAttempt = 20;
         LOGGER.info("Starting to get message on RabbitMQ");
         LOGGER.info(" Waiting for the message");
-        while (totalMessage == 0 && timeAttempt > 0) {
-            totalMessage = countMessageOnQueue(queueName);
-            timeAttempt--;
+        try {
+            return RabbitMQConnectionManager.retryPolicy("rabbitmq.count")
+                    .maxAttempts(20).backoff(100, 2000, 2.0).deadline(3000).withSystemProperties()
+                    .callUntil(() -> queueMessageCount(queueName), totalMessage -> totalMessage > 0);
+        } catch (TimeoutException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOGGER.error("getTotalMessageInQueue: Cannot create connection to channel", e);
+        }
+        return 0;
+    }
+
+    /**
+     * Subscribe to a queue, messages are pushed by the broker into a bounded in-memory buffer
+     *
+     * @param queueName Queue name
+     * @return Subscription, to be closed by the caller
+     * @throws IOException      IO Exception
+     * @throws TimeoutException Timeout Exception
+     */
+    public static RabbitMQSubscription subscribe(String queueName) throws IOException, TimeoutException {
+        return RabbitMQSubscription.subscribe(queueName, RabbitMQSubscription.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Wait for a number of messages on a queue without polling it, and consume them
+     *
+     * @param queueName     Queue name
+     * @param expected      Number of messages to wait for
+     * @param timeoutMillis Maximum time to wait
+     * @return Received messages, fewer than expected when the deadline was reached
+     * @throws IOException          IO Exception
+     * @throws TimeoutException     Timeout Exception
+     * @throws InterruptedException Interrupted Exception
+     */
+    public static List<String> awaitMessagesFromQueue(String queueName, int expected, long timeoutMillis)
+            throws IOException, TimeoutException, InterruptedException {
+        LOGGER.info("Waiting up to {} ms for {} message(s) on queue {}", timeoutMillis, expected, queueName);
+        try (RabbitMQSubscription subscription = RabbitMQSubscription.subscribe(queueName,
+                Math.max(1, Math.min(expected, RabbitMQSubscription.DEFAULT_CAPACITY)))) {
+            return decode(subscription.awaitMessages(expected, timeoutMillis));
         }
-        return totalMessage;
     }
 
     public static int countMessageOnQueue(String queueName) throws TimeoutException {
-        try (Connection conn = FACTORY.newConnection();
-             Channel channel = conn.createChannel()) {
-            AMQP.Queue.DeclareOk queueStatus = channel.queueDeclarePassive(queueName);
-            return queueStatus.getMessageCount();
+        try {
+            return queueMessageCount(queueName);
         } catch (IOException e) {
             LOGGER.error("countMessageOnQueue: Cannot create connection to channel", e);
         }
         return 0;
     }
 
+    private static int queueMessageCount(String queueName) throws IOException, TimeoutException {
+        return MANAGER.execute(channel -> {
+            AMQP.Queue.DeclareOk queueStatus = channel.queueDeclarePassive(queueName);
+            return queueStatus.getMessageCount();
+        });
+    }
+
     public static void purseMessage(String queueName) throws TimeoutException {
-        try (Connection conn = FACTORY.newConnection();
-             Channel channel = conn.createChannel()) {
-            channel.queuePurge(queueName);
+        try {
+            MANAGER.execute(channel -> channel.queuePurge(queueName));
         } catch (IOException e) {
             LOGGER.error("purseMessage: Cannot create connection to channel", e);
         }
     }
 
     public static String getFirstMessageInQueue(String queueName) throws TimeoutException {
-        try (Connection conn = FACTORY.newConnection();
-             Channel channel = conn.createChannel()) {
-            return new String(channel.basicGet(queueName, true).getBody());
+        GetResponse response = null;
+        try {
+            response = MANAGER.execute(channel -> channel.basicGet(queueName, true));
         } catch (IOException e) {
             LOGGER.error("getFirstMessageInQueue: Cannot create connection to channel", e);
         }
 
-        throw new NoSuchDataException();
+        if (response == null) {
+            throw new NoSuchDataException("There is no message on queue " + queueName);
+        }
+        return new String(response.getBody(), StandardCharsets.UTF_8);
     }
 
     public static List<String> getMessagesFromQueue(String queueName) throws TimeoutException {
+        List<String> listMessage = decode(getRawMessagesFromQueue(queueName));
+        listMessage.forEach(s -> LOGGER.debug("Message on Rabbit MQ : {}", s));
+        return listMessage;
+    }
+
+    /**
+     * Same as {@link #getMessagesFromQueue(String)}, bodies are kept as raw bytes
+     *
+     * @param queueName Queue name
+     * @return Messages in queue order
+     * @throws TimeoutException Timeout Exception
+     */
+    public static List<RabbitMQMessage> getRawMessagesFromQueue(String queueName) throws TimeoutException {
         int totalMessage = getTotalMessageInQueue(queueName);
-        List<String> listMessage = new ArrayList<>();
-        for (int i = 1; i <= totalMessage; i++) {
-            String body = getFirstMessageInQueue(queueName);
-            listMessage.add(body);
-        }
+        List<RabbitMQMessage> listMessage = totalMessage == 0
+                ? new ArrayList<>()
+                : drainQueue(queueName, Integer.MAX_VALUE, Long.MAX_VALUE);
 
         if (listMessage.isEmpty()) {
             LOGGER.warn("There is no message on queue");
         } else {
-            listMessage.forEach(s -> LOGGER.info("Message on Rabbit MQ : {}", listMessage));
+            LOGGER.info("Got {} message(s) on Rabbit MQ queue {}", listMessage.size(), queueName);
         }
         return listMessage;
     }
 
+    /**
+     * Read up to {@code maxMessages} messages or {@code maxBytes} of bodies from a queue on a single channel,
+     * with prefetch and batched acknowledgements. Reading stops as soon as the queue stays empty briefly.
+     *
+     * @param queueName   Queue name
+     * @param maxMessages Maximum number of messages
+     * @param maxBytes    Maximum total body size
+     * @return Messages in queue order, bodies are kept as raw bytes
+     * @throws TimeoutException Timeout Exception
+     */
+    public static List<RabbitMQMessage> drainQueue(String queueName, int maxMessages, long maxBytes) throws TimeoutException {
+        try {
+            return drain(queueName, maxMessages, maxBytes);
+        } catch (IOException e) {
+            LOGGER.error("drainQueue: Cannot create connection to channel", e);
+        }
+        return new ArrayList<>();
+    }
+
+    private static List<RabbitMQMessage> drain(String queueName, int maxMessages, long maxBytes) throws IOException, TimeoutException {
+        return MANAGER.execute(channel -> RabbitMQDrainer.drain(channel, queueName, maxMessages, maxBytes,
+                RabbitMQDrainer.DEFAULT_IDLE_TIMEOUT_MILLIS));
+    }
+
+    /**
+     * Parse the first message containing a text to a model. This scans every message, use
+     * {@link RabbitMQMessageSet} when looking up many messages in the same batch.
+     *
+     * @param listMessages    Message bodies
+     * @param clazz           Model class
+     * @param expectedContain Text the message must contain
+     * @param <T>             Model type
+     * @return Model, or null when no message contains the text
+     */
     @SneakyThrows
     public static <T> T parseSpecificMessageOnQueueToModel(List<String> listMessages, Class<T> clazz, String expectedContain) {
         for (String message : listMessages) {
@@ -94,8 +184,75 @@ public class RabbitMQ {
         return null;
     }
 
+    /**
+     * Wait for messages on several queues at the same time. All queues share the same deadline, so the
+     * call returns after the slowest queue rather than after the sum of all queues.
+     *
+     * @param expectedMessages Number of messages to wait for, per queue name
+     * @param timeoutMillis    Maximum time to wait
+     * @return Result per queue, in the order of the given map. A queue with fewer messages than expected when the
+     * deadline was reached is not a success.
+     */
+    public static Map<String, RabbitMQQueueResult> awaitMessagesFromQueues(Map<String, Integer> expectedMessages,
+                                                                           long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        return RabbitMQMultiQueueReader.read(new ArrayList<>(expectedMessages.keySet()), expectedMessages::get, queueName -> {
+            int expected = expectedMessages.get(queueName);
+            try (RabbitMQSubscription subscription = RabbitMQSubscription.subscribe(queueName,
+                    Math.max(1, Math.min(expected, RabbitMQSubscription.DEFAULT_CAPACITY)))) {
+                return subscription.awaitMessages(expected, Math.max(0, deadline - System.currentTimeMillis()));
+            }
+        });
+    }
+
+    /**
+     * Drain several queues at the same time
+     *
+     * @param queueNames Queue names
+     * @return Result per queue, in the given order. A queue that cannot be read, e.g. a missing one, has the error.
+     */
+    public static Map<String, RabbitMQQueueResult> drainQueues(Collection<String> queueNames) {
+        return RabbitMQMultiQueueReader.read(new ArrayList<>(queueNames),
+                queueName -> drain(queueName, Integer.MAX_VALUE, Long.MAX_VALUE));
+    }
+
+    /**
+     * Publish models to a queue, serialized with the shared Gson, and wait for the broker confirms
+     *
+     * @param queueName Queue name
+     * @param models    Models to publish
+     * @return Published and confirmed counts
+     * @throws IOException      IO Exception
+     * @throws TimeoutException Timeout Exception
+     */
+    public static RabbitMQPublishResult publishToQueue(String queueName, Iterable<?> models) throws IOException, TimeoutException {
+        return RabbitMQPublisher.toQueue(queueName).publish(models);
+    }
+
+    private static List<String> decode(List<RabbitMQMessage> messages) {
+        List<String> bodies = new ArrayList<>(messages.size());
+        messages.forEach(message -> bodies.add(message.asString()));
+        return bodies;
+    }
+
+    /**
+     * Statistics of the shared channel pool
+     *
+     * @return Pool statistics
+     */
+    public static RabbitMQPoolStatistics getPoolStatistics() {
+        return MANAGER.getStatistics();
+    }
+
+    /**
+     * Close the shared connection and its channels at the end of a suite, the next call reconnects
+     */
+    public static void close() {
+        MANAGER.close();
+    }
+
     public void setURI(String uri) throws NoSuchAlgorithmException, KeyManagementException, URISyntaxException {
-        FACTORY.setUri(uri);
+        MANAGER.setUri(uri);
     }
 }
 
@@ -0,0 +1,295 @@
+package utils;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.RecoveryListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import exceptions.NoSuchDataException;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keep one long-lived connection to the broker and a bounded pool of channels on top of it,
+ * so helpers do not pay a TCP connection and AMQP handshake for every call.
+ */
+public class RabbitMQConnectionManager {
+    public static final String MAX_CHANNELS_VARIABLE = "rabbitmq.pool.maxChannels";
+    public static final String BORROW_TIMEOUT_VARIABLE = "rabbitmq.pool.borrowTimeoutMillis";
+    public static final String EMBEDDED_VARIABLE = "rabbitmq.embedded";
+
+    private static final Logger LOGGER = LoggerManager.getInstance();
+    private static RabbitMQConnectionManager instance;
+
+    private final ConnectionFactory factory;
+    private final int maxChannels;
+    private final long borrowTimeoutMillis;
+    private final BlockingQueue<Channel> idleChannels = new LinkedBlockingQueue<>();
+    private final Semaphore permits;
+    private final AtomicLong inUse = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong creations = new AtomicLong();
+    private final AtomicLong discards = new AtomicLong();
+    private volatile Connection connection;
+
+    RabbitMQConnectionManager(ConnectionFactory factory, int maxChannels, long borrowTimeoutMillis) {
+        this.factory = factory;
+        this.maxChannels = maxChannels;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.permits = new Semaphore(maxChannels, true);
+        // Let the client re-open the connection and its channels after a broker restart
+        this.factory.setAutomaticRecoveryEnabled(true);
+        this.factory.setTopologyRecoveryEnabled(true);
+    }
+
+    public static synchronized RabbitMQConnectionManager getInstance() {
+        if (instance == null) {
+            instance = new RabbitMQConnectionManager(new ConnectionFactory(),
+                    Integer.getInteger(MAX_CHANNELS_VARIABLE, 16),
+                    Long.getLong(BORROW_TIMEOUT_VARIABLE, 30000L));
+            Runtime.getRuntime().addShutdownHook(new Thread(instance::close, "rabbitmq-pool-shutdown"));
+        }
+        return instance;
+    }
+
+    /**
+     * @return True when the helpers run against {@link InMemoryRabbitMQ} instead of a real broker
+     */
+    public static boolean isEmbedded() {
+        return Boolean.getBoolean(EMBEDDED_VARIABLE);
+    }
+
+    /**
+     * Retry policy for broker operations. Every policy shares one circuit breaker for the broker.
+     *
+     * @param name Operation name, also the prefix of the system properties overriding the policy
+     * @return Retry policy, to be tuned by the caller before {@link RetryPolicy#withSystemProperties()}
+     */
+    public static RetryPolicy retryPolicy(String name) {
+        return RetryPolicy.named(name).circuitBreaker(CircuitBreaker.named("rabbitmq"), RabbitMQConnectionManager::isBrokerFailure);
+    }
+
+    /**
+     * @param e Error of a broker operation
+     * @return False for channel errors answered by a working broker, such as a missing queue
+     */
+    static boolean isBrokerFailure(Throwable e) {
+        Throwable cause = e.getCause();
+        return !(cause instanceof ShutdownSignalException) || ((ShutdownSignalException) cause).isHardError();
+    }
+
+    public ConnectionFactory getFactory() {
+        return factory;
+    }
+
+    /**
+     * Run the callback on a pooled channel. The channel is returned to the pool afterwards, or
+     * discarded when the broker closed it (e.g. a passive declare on a missing queue).
+     *
+     * @param callback Work to do on the channel
+     * @param <T>      Returned type
+     * @return Value returned by the callback
+     * @throws IOException      IO Exception
+     * @throws TimeoutException When no channel or connection is available in time
+     */
+    public <T> T execute(ChannelCallback<T> callback) throws IOException, TimeoutException {
+        Channel channel = borrowChannel();
+        try {
+            return callback.execute(channel);
+        } finally {
+            releaseChannel(channel);
+        }
+    }
+
+    public Channel borrowChannel() throws IOException, TimeoutException {
+        if (!permits.tryAcquire()) {
+            waits.incrementAndGet();
+            try {
+                if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    throw new TimeoutException("No RabbitMQ channel available after " + borrowTimeoutMillis + " ms");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TimeoutException("Interrupted while waiting for a RabbitMQ channel");
+            }
+        }
+
+        try {
+            Channel channel;
+            while ((channel = idleChannels.poll()) != null) {
+                if (channel.isOpen()) {
+                    inUse.incrementAndGet();
+                    return channel;
+                }
+                discards.incrementAndGet();
+            }
+            channel = getConnection().createChannel();
+            if (channel == null) {
+                throw new NoSuchDataException("The broker has no channel left on the current connection");
+            }
+            creations.incrementAndGet();
+            inUse.incrementAndGet();
+            return channel;
+        } catch (IOException | TimeoutException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public void releaseChannel(Channel channel) {
+        inUse.decrementAndGet();
+        try {
+            if (channel.isOpen()) {
+                idleChannels.offer(channel);
+            } else {
+                discards.incrementAndGet();
+                closeQuietly(channel);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Give the shared connection, opening it on first use or after {@link #close()}. A connection lost
+     * with the broker is left to the client's automatic recovery: the caller waits for it up to
+     * {@code rabbitmq.pool.borrowTimeoutMillis}. Only a connection that will not recover, because it was
+     * closed by the application, is replaced.
+     * With {@code -Drabbitmq.embedded=true} the connection goes to the in-memory broker.
+     *
+     * @return Open connection
+     * @throws IOException      IO Exception
+     * @throws TimeoutException When the connection is still recovering after the borrow timeout
+     */
+    public synchronized Connection getConnection() throws IOException, TimeoutException {
+        if (connection != null && !connection.isOpen() && isRecovering(connection)) {
+            this.awaitRecovery();
+        }
+        if (connection == null || !connection.isOpen()) {
+            if (connection != null) {
+                LOGGER.warn("RabbitMQ connection is closed, opening a new one");
+                idleChannels.clear();
+                connection.abort();
+            }
+            connection = isEmbedded()
+                    ? InMemoryRabbitMQ.getInstance().newConnection()
+                    : factory.newConnection("snake-test-helper");
+            if (connection instanceof Recoverable) {
+                ((Recoverable) connection).addRecoveryListener(new RecoveryListener() {
+                    @Override
+                    public void handleRecovery(Recoverable recoverable) {
+                        LOGGER.info("RabbitMQ connection recovered");
+                        synchronized (RabbitMQConnectionManager.this) {
+                            RabbitMQConnectionManager.this.notifyAll();
+                        }
+                    }
+
+                    @Override
+                    public void handleRecoveryStarted(Recoverable recoverable) {
+                        LOGGER.warn("RabbitMQ connection lost, recovering");
+                    }
+                });
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * @param connection Closed connection
+     * @return True when the client recovers the connection by itself: it keeps retrying until it succeeds
+     * unless the application closed the connection
+     */
+    private static boolean isRecovering(Connection connection) {
+        ShutdownSignalException reason = connection.getCloseReason();
+        return connection instanceof Recoverable && reason != null && !reason.isInitiatedByApplication();
+    }
+
+    private void awaitRecovery() throws TimeoutException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMillis);
+        try {
+            // resetConnection() may run while this waits
+            while (connection != null && !connection.isOpen() && isRecovering(connection)) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    throw new TimeoutException("RabbitMQ connection still recovering after " + borrowTimeoutMillis + " ms");
+                }
+                this.wait(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TimeoutException("Interrupted while waiting for the RabbitMQ connection to recover");
+        }
+    }
+
+    /**
+     * Point the manager at another broker. Pooled channels belong to the old connection, so they
+     * are dropped together with it.
+     *
+     * @param uri AMQP URI
+     * @throws NoSuchAlgorithmException NoSuchAlgorithm Exception
+     * @throws KeyManagementException   KeyManagement Exception
+     * @throws URISyntaxException       When the URI is invalid
+     */
+    public synchronized void setUri(String uri) throws NoSuchAlgorithmException, KeyManagementException, URISyntaxException {
+        factory.setUri(uri);
+        resetConnection();
+    }
+
+    public synchronized void resetConnection() {
+        Channel channel;
+        while ((channel = idleChannels.poll()) != null) {
+            closeQuietly(channel);
+        }
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (Exception e) {
+                LOGGER.warn("Cannot close RabbitMQ connection: {}", e.getMessage());
+            }
+            connection = null;
+        }
+    }
+
+    /**
+     * Close the connection and its pooled channels. The manager stays usable: the next call opens a
+     * new connection, so a second suite in the same JVM works after the first one closed it.
+     */
+    public synchronized void close() {
+        if (connection == null) {
+            return;
+        }
+        resetConnection();
+        LOGGER.info("RabbitMQ pool closed: {}", getStatistics());
+    }
+
+    public RabbitMQPoolStatistics getStatistics() {
+        return new RabbitMQPoolStatistics(maxChannels, inUse.get(), idleChannels.size(), waits.get(),
+                creations.get(), discards.get());
+    }
+
+    private static void closeQuietly(Channel channel) {
+        try {
+            if (channel.isOpen()) {
+                channel.close();
+            }
+        } catch (Exception e) {
+            // Channel is already unusable, nothing else to release
+        }
+    }
+
+    @FunctionalInterface
+    public interface ChannelCallback<T> {
+        T execute(Channel channel) throws IOException;
+    }
+}
@@ -0,0 +1,134 @@
+package utils;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read many messages from a queue on a single channel. The broker streams up to {@code prefetch}
+ * messages ahead of the reader, and accepted messages are acknowledged in batches with one
+ * {@code multiple=true} ack, so there is no round trip per message.
+ */
+class RabbitMQDrainer {
+    static final int DEFAULT_PREFETCH = Integer.getInteger("rabbitmq.drain.prefetch", 500);
+    static final int DEFAULT_ACK_BATCH = Integer.getInteger("rabbitmq.drain.ackBatch", 250);
+    static final long DEFAULT_IDLE_TIMEOUT_MILLIS = Long.getLong("rabbitmq.drain.idleTimeoutMillis", 500L);
+    private static final long CANCEL_TIMEOUT_MILLIS = 5000L;
+    private static final Logger LOGGER = LoggerManager.getInstance();
+
+    private RabbitMQDrainer() {
+    }
+
+    /**
+     * Drain a queue until it stays empty for {@code idleTimeoutMillis}, or one of the limits is reached.
+     * Messages received past the limits are put back on the queue.
+     *
+     * @param channel           Channel to consume on, it is left without consumer afterwards
+     * @param queueName         Queue name
+     * @param maxMessages       Maximum number of messages to return
+     * @param maxBytes          Maximum total size of the returned bodies, at least one message is returned
+     * @param idleTimeoutMillis Time without delivery after which the queue is considered empty
+     * @return Messages in queue order
+     * @throws IOException IO Exception
+     */
+    static List<RabbitMQMessage> drain(Channel channel, String queueName, int maxMessages, long maxBytes,
+                                       long idleTimeoutMillis) throws IOException {
+        BlockingQueue<Delivery> inbox = new LinkedBlockingQueue<>();
+        AtomicLong lastDeliveredTag = new AtomicLong(-1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+
+        channel.basicQos(Math.max(1, Math.min(DEFAULT_PREFETCH, maxMessages)));
+        String consumerTag = channel.basicConsume(queueName, false, new DefaultConsumer(channel) {
+            @Override
+            public void handleDelivery(String tag, Envelope envelope, AMQP.BasicProperties properties, byte[] body) {
+                lastDeliveredTag.set(envelope.getDeliveryTag());
+                inbox.add(new Delivery(envelope.getDeliveryTag(), body));
+            }
+
+            @Override
+            public void handleCancelOk(String tag) {
+                cancelled.countDown();
+            }
+
+            @Override
+            public void handleCancel(String tag) {
+                cancelled.countDown();
+            }
+        });
+
+        List<RabbitMQMessage> messages = new ArrayList<>();
+        long totalBytes = 0;
+        long lastAcceptedTag = -1;
+        int pendingAcks = 0;
+        try {
+            while (messages.size() < maxMessages) {
+                Delivery delivery = inbox.poll(idleTimeoutMillis, TimeUnit.MILLISECONDS);
+                if (delivery == null) {
+                    break;
+                }
+                if (!messages.isEmpty() && totalBytes + delivery.body.length > maxBytes) {
+                    break;
+                }
+                messages.add(RabbitMQMessage.of(delivery.body));
+                totalBytes += delivery.body.length;
+                lastAcceptedTag = delivery.deliveryTag;
+                if (++pendingAcks >= DEFAULT_ACK_BATCH) {
+                    channel.basicAck(lastAcceptedTag, true);
+                    pendingAcks = 0;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Drain of queue {} interrupted after {} messages", queueName, messages.size());
+        } finally {
+            stopConsumer(channel, consumerTag, cancelled);
+        }
+
+        if (pendingAcks > 0) {
+            channel.basicAck(lastAcceptedTag, true);
+        }
+        // Everything delivered after the last accepted message goes back to the queue
+        if (lastDeliveredTag.get() > lastAcceptedTag) {
+            channel.basicNack(lastDeliveredTag.get(), true, true);
+        }
+        channel.basicQos(0);
+        LOGGER.info("Drained {} message(s), {} bytes from queue {}", messages.size(), totalBytes, queueName);
+        return messages;
+    }
+
+    private static void stopConsumer(Channel channel, String consumerTag, CountDownLatch cancelled) throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        channel.basicCancel(consumerTag);
+        try {
+            // Deliveries dispatched before the cancel-ok must be counted before acking and requeueing
+            if (!cancelled.await(CANCEL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                LOGGER.warn("No cancel-ok received for consumer {}", consumerTag);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Delivery {
+        private final long deliveryTag;
+        private final byte[] body;
+
+        private Delivery(long deliveryTag, byte[] body) {
+            this.deliveryTag = deliveryTag;
+            this.body = body;
+        }
+    }
+}
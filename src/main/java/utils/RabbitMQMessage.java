@@ -0,0 +1,189 @@
+package utils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Message body kept as raw bytes. It is decoded as UTF-8 only when asked, and can be streamed into Gson
+ * without building an intermediate String. Large bodies can be moved off heap with {@link #toOffHeap()}.
+ */
+public class RabbitMQMessage {
+    private static final Gson gson = GsonManager.getInstance();
+
+    private final ByteBuffer body;
+
+    private RabbitMQMessage(ByteBuffer body) {
+        this.body = body.asReadOnlyBuffer();
+    }
+
+    public static RabbitMQMessage of(byte[] body) {
+        return new RabbitMQMessage(ByteBuffer.wrap(body));
+    }
+
+    public static RabbitMQMessage of(String body) {
+        return of(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Copy the body to a direct buffer, so that a large snapshot does not stay on the Java heap
+     *
+     * @return Off-heap copy of this message
+     */
+    public RabbitMQMessage toOffHeap() {
+        if (body.isDirect()) {
+            return this;
+        }
+        ByteBuffer direct = ByteBuffer.allocateDirect(body.remaining());
+        direct.put(body.duplicate());
+        direct.flip();
+        return new RabbitMQMessage(direct);
+    }
+
+    public boolean isOffHeap() {
+        return body.isDirect();
+    }
+
+    /**
+     * @return Body size in bytes
+     */
+    public int size() {
+        return body.remaining();
+    }
+
+    /**
+     * @return Copy of the raw body
+     */
+    public byte[] getBody() {
+        byte[] bytes = new byte[body.remaining()];
+        body.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Decode the body as UTF-8, the String is not kept
+     *
+     * @return Decoded body
+     */
+    public String asString() {
+        return StandardCharsets.UTF_8.decode(body.duplicate()).toString();
+    }
+
+    public InputStream openStream() {
+        return new ByteBufferInputStream(body.duplicate());
+    }
+
+    public Reader openReader() {
+        return new InputStreamReader(openStream(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Deserialize the body by streaming it into the shared Gson
+     *
+     * @param type Model type
+     * @param <T>  Model type
+     * @return Model
+     */
+    public <T> T readAs(Type type) {
+        try (JsonReader reader = new JsonReader(openReader())) {
+            return gson.fromJson(reader, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public <T> T readAs(Class<T> clazz) {
+        return readAs((Type) clazz);
+    }
+
+    /**
+     * Deserialize the body by streaming it into a type adapter
+     *
+     * @param adapter Type adapter
+     * @param <T>     Model type
+     * @return Model
+     */
+    public <T> T readWith(TypeAdapter<T> adapter) {
+        try (JsonReader reader = new JsonReader(openReader())) {
+            return adapter.read(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public JsonElement readTree() {
+        try (Reader reader = openReader()) {
+            return JsonParser.parseReader(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Check whether the body contains a text, comparing UTF-8 bytes without decoding the body
+     *
+     * @param text Text to search
+     * @return True when the text is found
+     */
+    public boolean contains(String text) {
+        byte[] pattern = text.getBytes(StandardCharsets.UTF_8);
+        int limit = body.limit() - pattern.length;
+        for (int i = body.position(); i <= limit; i++) {
+            int j = 0;
+            while (j < pattern.length && body.get(i + j) == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return asString();
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package utils;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Messages read from a queue, indexed once by a few JSON paths (correlation id, event type, entity id...)
+ * so that lookups do not scan every body. Paths are dot separated, array elements are addressed by
+ * their index, e.g. {@code header.correlationId} or {@code items.0.id}.
+ * <p>
+ * Bodies stay as raw bytes. They are streamed into Gson to build the index, and deserialized to the
+ * model class only when they are looked up, and only once per class.
+ */
+public class RabbitMQMessageSet {
+    private static final Logger LOGGER = LoggerManager.getInstance();
+
+    private final List<RabbitMQMessage> messages;
+    private final Map<String, Map<String, List<Integer>>> indexes = new HashMap<>();
+    private final Map<Class<?>, Object[]> models = new ConcurrentHashMap<>();
+
+    private RabbitMQMessageSet(List<RabbitMQMessage> messages, String... jsonPaths) {
+        this.messages = Collections.unmodifiableList(new ArrayList<>(messages));
+        for (String jsonPath : jsonPaths) {
+            indexes.put(jsonPath, new HashMap<>());
+        }
+        for (int i = 0; i < this.messages.size(); i++) {
+            indexMessage(i);
+        }
+    }
+
+    /**
+     * Build the set from messages already read
+     *
+     * @param messages  Messages
+     * @param jsonPaths JSON paths to index
+     * @return Indexed messages
+     */
+    public static RabbitMQMessageSet of(List<RabbitMQMessage> messages, String... jsonPaths) {
+        return new RabbitMQMessageSet(messages, jsonPaths);
+    }
+
+    /**
+     * Build the set from message bodies already decoded
+     *
+     * @param messages  Message bodies
+     * @param jsonPaths JSON paths to index
+     * @return Indexed messages
+     */
+    public static RabbitMQMessageSet ofStrings(List<String> messages, String... jsonPaths) {
+        List<RabbitMQMessage> rawMessages = new ArrayList<>(messages.size());
+        messages.forEach(message -> rawMessages.add(RabbitMQMessage.of(message)));
+        return new RabbitMQMessageSet(rawMessages, jsonPaths);
+    }
+
+    /**
+     * Drain a queue and index its messages
+     *
+     * @param queueName Queue name
+     * @param jsonPaths JSON paths to index
+     * @return Indexed messages
+     * @throws TimeoutException Timeout Exception
+     */
+    public static RabbitMQMessageSet fromQueue(String queueName, String... jsonPaths) throws TimeoutException {
+        return new RabbitMQMessageSet(RabbitMQ.drainQueue(queueName, Integer.MAX_VALUE, Long.MAX_VALUE), jsonPaths);
+    }
+
+    public int size() {
+        return messages.size();
+    }
+
+    public List<RabbitMQMessage> getMessages() {
+        return messages;
+    }
+
+    public boolean contains(String jsonPath, String value) {
+        return !positions(jsonPath, value).isEmpty();
+    }
+
+    /**
+     * Get the first message whose JSON path has the given value
+     *
+     * @param jsonPath Indexed JSON path
+     * @param value    Expected value
+     * @return Message body, or null when there is none
+     */
+    public String findMessage(String jsonPath, String value) {
+        RabbitMQMessage message = findRawMessage(jsonPath, value);
+        return message == null ? null : message.asString();
+    }
+
+    /**
+     * Get the first message whose JSON path has the given value, without decoding it
+     *
+     * @param jsonPath Indexed JSON path
+     * @param value    Expected value
+     * @return Message, or null when there is none
+     */
+    public RabbitMQMessage findRawMessage(String jsonPath, String value) {
+        List<Integer> positions = positions(jsonPath, value);
+        return positions.isEmpty() ? null : messages.get(positions.get(0));
+    }
+
+    /**
+     * Get the first message whose JSON path has the given value, as a model
+     *
+     * @param jsonPath Indexed JSON path
+     * @param value    Expected value
+     * @param clazz    Model class
+     * @param <T>      Model type
+     * @return Model, or null when there is no such message
+     */
+    public <T> T find(String jsonPath, String value, Class<T> clazz) {
+        List<Integer> positions = positions(jsonPath, value);
+        return positions.isEmpty() ? null : model(positions.get(0), clazz);
+    }
+
+    /**
+     * Get every message whose JSON path has the given value, as models
+     *
+     * @param jsonPath Indexed JSON path
+     * @param value    Expected value
+     * @param clazz    Model class
+     * @param <T>      Model type
+     * @return Models in queue order
+     */
+    public <T> List<T> findAll(String jsonPath, String value, Class<T> clazz) {
+        List<Integer> positions = positions(jsonPath, value);
+        List<T> result = new ArrayList<>(positions.size());
+        for (int position : positions) {
+            result.add(model(position, clazz));
+        }
+        return result;
+    }
+
+    private List<Integer> positions(String jsonPath, String value) {
+        Map<String, List<Integer>> index = indexes.get(jsonPath);
+        if (index == null) {
+            throw new IllegalArgumentException("JSON path " + jsonPath + " is not indexed, indexed paths: " + indexes.keySet());
+        }
+        return index.getOrDefault(value, Collections.emptyList());
+    }
+
+    private <T> T model(int position, Class<T> clazz) {
+        Object[] cache = models.computeIfAbsent(clazz, c -> new Object[messages.size()]);
+        synchronized (cache) {
+            if (cache[position] == null) {
+                cache[position] = messages.get(position).readAs(clazz);
+            }
+            return clazz.cast(cache[position]);
+        }
+    }
+
+    private void indexMessage(int position) {
+        JsonElement root;
+        try {
+            root = messages.get(position).readTree();
+        } catch (JsonParseException e) {
+            LOGGER.debug("Message {} is not JSON, it is not indexed: {}", position, e.getMessage());
+            return;
+        }
+        for (Map.Entry<String, Map<String, List<Integer>>> index : indexes.entrySet()) {
+            JsonElement value = select(root, index.getKey());
+            if (value != null && value.isJsonPrimitive()) {
+                index.getValue().computeIfAbsent(value.getAsString(), v -> new ArrayList<>(1)).add(position);
+            }
+        }
+    }
+
+    private static JsonElement select(JsonElement root, String jsonPath) {
+        JsonElement current = root;
+        for (String segment : jsonPath.split("\\.")) {
+            if (current == null || current.isJsonNull()) {
+                return null;
+            }
+            if (current.isJsonObject()) {
+                current = current.getAsJsonObject().get(segment);
+            } else if (current.isJsonArray() && segment.matches("\\d+")) {
+                int index = Integer.parseInt(segment);
+                current = index < current.getAsJsonArray().size() ? current.getAsJsonArray().get(index) : null;
+            } else {
+                return null;
+            }
+        }
+        return current;
+    }
+}
@@ -0,0 +1,111 @@
+package utils;
+
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+/**
+ * Read several queues at the same time on a bounded executor, so the total wait is close to the
+ * slowest queue instead of the sum of all queues.
+ */
+class RabbitMQMultiQueueReader {
+    static final int MAX_PARALLELISM = Integer.getInteger("rabbitmq.multiQueue.parallelism", 16);
+    private static final Logger LOGGER = LoggerManager.getInstance();
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private RabbitMQMultiQueueReader() {
+    }
+
+    /**
+     * Run one read per queue concurrently, without an expected message count
+     *
+     * @param queueNames Queues to read, the result map keeps this order
+     * @param reader     Read of a single queue
+     * @return Result per queue
+     */
+    static Map<String, RabbitMQQueueResult> read(List<String> queueNames, QueueReader reader) {
+        return read(queueNames, queueName -> RabbitMQQueueResult.ANY_COUNT, reader);
+    }
+
+    /**
+     * Run one read per queue concurrently
+     *
+     * @param queueNames Queues to read, the result map keeps this order
+     * @param expected   Number of messages expected per queue
+     * @param reader     Read of a single queue
+     * @return Result per queue
+     */
+    static Map<String, RabbitMQQueueResult> read(List<String> queueNames, ToIntFunction<String> expected, QueueReader reader) {
+        Map<String, RabbitMQQueueResult> results = new LinkedHashMap<>();
+        if (queueNames.isEmpty()) {
+            return results;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(queueNames.size(), MAX_PARALLELISM), daemonThreads());
+        long start = System.nanoTime();
+        try {
+            List<Future<RabbitMQQueueResult>> futures = new ArrayList<>(queueNames.size());
+            for (String queueName : queueNames) {
+                futures.add(executor.submit(() -> {
+                    List<RabbitMQMessage> messages = new ArrayList<>();
+                    Throwable error = null;
+                    try {
+                        messages = reader.read(queueName);
+                    } catch (Exception e) {
+                        LOGGER.error("Cannot read queue {}", queueName, e);
+                        error = e;
+                    }
+                    return new RabbitMQQueueResult(queueName, messages, expected.applyAsInt(queueName), error,
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                }));
+            }
+
+            for (int i = 0; i < queueNames.size(); i++) {
+                String queueName = queueNames.get(i);
+                results.put(queueName, await(queueName, expected.applyAsInt(queueName), futures.get(i), start));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        LOGGER.info("Read {} queue(s) in {} ms: {}", queueNames.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), results.values());
+        return results;
+    }
+
+    private static RabbitMQQueueResult await(String queueName, int expected, Future<RabbitMQQueueResult> future, long start) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new RabbitMQQueueResult(queueName, new ArrayList<>(), expected, e,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (ExecutionException e) {
+            return new RabbitMQQueueResult(queueName, new ArrayList<>(), expected, e.getCause(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    private static ThreadFactory daemonThreads() {
+        return runnable -> {
+            Thread thread = new Thread(runnable, "rabbitmq-multi-queue-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @FunctionalInterface
+    interface QueueReader {
+        List<RabbitMQMessage> read(String queueName) throws Exception;
+    }
+}
@@ -0,0 +1,59 @@
+package utils;
+
+/**
+ * Snapshot of the RabbitMQ channel pool counters
+ */
+public class RabbitMQPoolStatistics {
+    private final int maxChannels;
+    private final long channelsInUse;
+    private final long idleChannels;
+    private final long waits;
+    private final long creations;
+    private final long discards;
+
+    public RabbitMQPoolStatistics(int maxChannels, long channelsInUse, long idleChannels, long waits,
+                                  long creations, long discards) {
+        this.maxChannels = maxChannels;
+        this.channelsInUse = channelsInUse;
+        this.idleChannels = idleChannels;
+        this.waits = waits;
+        this.creations = creations;
+        this.discards = discards;
+    }
+
+    public int getMaxChannels() {
+        return maxChannels;
+    }
+
+    public long getChannelsInUse() {
+        return channelsInUse;
+    }
+
+    public long getIdleChannels() {
+        return idleChannels;
+    }
+
+    /**
+     * @return Number of borrows that had to wait because every channel was in use
+     */
+    public long getWaits() {
+        return waits;
+    }
+
+    public long getCreations() {
+        return creations;
+    }
+
+    /**
+     * @return Number of channels dropped because the broker closed them
+     */
+    public long getDiscards() {
+        return discards;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("max=%d, inUse=%d, idle=%d, waits=%d, creations=%d, discards=%d",
+                maxChannels, channelsInUse, idleChannels, waits, creations, discards);
+    }
+}
@@ -0,0 +1,63 @@
+package utils;
+
+/**
+ * Outcome of a publish with publisher confirms
+ */
+public class RabbitMQPublishResult {
+    private final long published;
+    private final long confirmed;
+    private final long nacked;
+    private final long unroutable;
+    private final long durationMillis;
+
+    public RabbitMQPublishResult(long published, long confirmed, long nacked, long unroutable, long durationMillis) {
+        this.published = published;
+        this.confirmed = confirmed;
+        this.nacked = nacked;
+        this.unroutable = unroutable;
+        this.durationMillis = durationMillis;
+    }
+
+    public long getPublished() {
+        return published;
+    }
+
+    /**
+     * @return Number of messages the broker confirmed and routed to at least one queue
+     */
+    public long getConfirmed() {
+        return confirmed;
+    }
+
+    /**
+     * @return Number of messages the broker rejected
+     */
+    public long getNacked() {
+        return nacked;
+    }
+
+    /**
+     * @return Number of messages the broker returned because no queue was bound for them
+     */
+    public long getUnroutable() {
+        return unroutable;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public double getMessagesPerSecond() {
+        return durationMillis == 0 ? published : published * 1000.0 / durationMillis;
+    }
+
+    public boolean isFullyConfirmed() {
+        return confirmed == published;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("published=%d, confirmed=%d, nacked=%d, unroutable=%d, duration=%d ms, rate=%.1f msg/s",
+                published, confirmed, nacked, unroutable, durationMillis, getMessagesPerSecond());
+    }
+}
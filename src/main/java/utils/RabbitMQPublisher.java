@@ -0,0 +1,222 @@
+package utils;
+
+import com.google.gson.Gson;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.ReturnListener;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publish messages on a pooled channel with asynchronous publisher confirms. At most {@code batchSize}
+ * messages are waiting for a confirm at any time, the publisher does not wait for each message.
+ * <pre>
+ *     RabbitMQPublishResult result = RabbitMQPublisher.toQueue("orders").batchSize(1000).publish(orders);
+ * </pre>
+ * Messages are published as mandatory: the broker returns a message no queue is bound for, such as one sent
+ * to a mistyped queue name, and still confirms it. Returned messages are counted as unroutable, not confirmed.
+ * The pooled channel stays in confirm mode afterwards, which does not change how the other helpers use it.
+ */
+public class RabbitMQPublisher {
+    private static final Logger LOGGER = LoggerManager.getInstance();
+    private static final Gson gson = GsonManager.getInstance();
+    private static final AMQP.BasicProperties JSON_PERSISTENT = new AMQP.BasicProperties.Builder()
+            .contentType("application/json")
+            .contentEncoding(StandardCharsets.UTF_8.name())
+            .deliveryMode(2)
+            .build();
+
+    private final String exchange;
+    private final String routingKey;
+    private AMQP.BasicProperties properties = JSON_PERSISTENT;
+    private int batchSize = 500;
+    private double messagesPerSecond;
+    private long confirmTimeoutMillis = 60000L;
+
+    private RabbitMQPublisher(String exchange, String routingKey) {
+        this.exchange = exchange;
+        this.routingKey = routingKey;
+    }
+
+    /**
+     * Publish to an exchange
+     *
+     * @param exchange   Exchange name
+     * @param routingKey Routing key
+     * @return Publisher
+     */
+    public static RabbitMQPublisher to(String exchange, String routingKey) {
+        return new RabbitMQPublisher(exchange, routingKey);
+    }
+
+    /**
+     * Publish straight to a queue through the default exchange
+     *
+     * @param queueName Queue name
+     * @return Publisher
+     */
+    public static RabbitMQPublisher toQueue(String queueName) {
+        return new RabbitMQPublisher("", queueName);
+    }
+
+    /**
+     * @param batchSize Maximum number of messages waiting for a confirm
+     * @return This publisher
+     */
+    public RabbitMQPublisher batchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * @param messagesPerSecond Maximum publish rate, 0 for no limit
+     * @return This publisher
+     */
+    public RabbitMQPublisher rateLimit(double messagesPerSecond) {
+        this.messagesPerSecond = messagesPerSecond;
+        return this;
+    }
+
+    public RabbitMQPublisher confirmTimeout(long confirmTimeoutMillis) {
+        this.confirmTimeoutMillis = confirmTimeoutMillis;
+        return this;
+    }
+
+    public RabbitMQPublisher properties(AMQP.BasicProperties properties) {
+        this.properties = properties;
+        return this;
+    }
+
+    /**
+     * Serialize the models with the shared Gson and publish them. Models are serialized one at a time while
+     * publishing, so the serialized bodies are never all in memory together.
+     *
+     * @param models Models to publish
+     * @return Published, confirmed and unroutable counts
+     * @throws IOException      IO Exception
+     * @throws TimeoutException When confirms did not arrive in time
+     */
+    public RabbitMQPublishResult publish(Iterable<?> models) throws IOException, TimeoutException {
+        return publishRaw(() -> new Iterator<byte[]>() {
+            private final Iterator<?> iterator = models.iterator();
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public byte[] next() {
+                return gson.toJson(iterator.next()).getBytes(StandardCharsets.UTF_8);
+            }
+        });
+    }
+
+    /**
+     * Publish bodies as they are
+     *
+     * @param bodies Message bodies
+     * @return Published, confirmed and unroutable counts
+     * @throws IOException      IO Exception
+     * @throws TimeoutException When confirms did not arrive in time
+     */
+    public RabbitMQPublishResult publishRaw(Iterable<byte[]> bodies) throws IOException, TimeoutException {
+        return RabbitMQConnectionManager.getInstance().execute(channel -> publishOn(channel, bodies));
+    }
+
+    private RabbitMQPublishResult publishOn(Channel channel, Iterable<byte[]> bodies) throws IOException {
+        ConcurrentNavigableMap<Long, Boolean> outstanding = new ConcurrentSkipListMap<>();
+        Semaphore window = new Semaphore(batchSize);
+        AtomicLong confirmed = new AtomicLong();
+        AtomicLong nacked = new AtomicLong();
+        AtomicLong unroutable = new AtomicLong();
+        // The broker sends the return of a message before its confirm
+        ReturnListener returns = (replyCode, replyText, returnedExchange, returnedRoutingKey, returnedProperties, returnedBody)
+                -> unroutable.incrementAndGet();
+        ConfirmListener listener = new ConfirmListener() {
+            @Override
+            public void handleAck(long deliveryTag, boolean multiple) {
+                confirmed.addAndGet(settle(outstanding, window, deliveryTag, multiple));
+            }
+
+            @Override
+            public void handleNack(long deliveryTag, boolean multiple) {
+                nacked.addAndGet(settle(outstanding, window, deliveryTag, multiple));
+            }
+        };
+
+        channel.confirmSelect();
+        channel.addConfirmListener(listener);
+        channel.addReturnListener(returns);
+        long published = 0;
+        long start = System.nanoTime();
+        long intervalNanos = messagesPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / messagesPerSecond) : 0;
+        long nextSend = start;
+        try {
+            for (byte[] body : bodies) {
+                if (intervalNanos > 0) {
+                    long wait = nextSend - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    nextSend += intervalNanos;
+                }
+                acquire(window, 1);
+                outstanding.put(channel.getNextPublishSeqNo(), Boolean.TRUE);
+                channel.basicPublish(exchange, routingKey, true, properties, body);
+                published++;
+            }
+            // Every permit is back once the broker confirmed or rejected all messages
+            acquire(window, batchSize);
+            window.release(batchSize);
+        } finally {
+            channel.removeConfirmListener(listener);
+            channel.removeReturnListener(returns);
+        }
+
+        long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        RabbitMQPublishResult result = new RabbitMQPublishResult(published, confirmed.get() - unroutable.get(),
+                nacked.get(), unroutable.get(), durationMillis);
+        LOGGER.info("Published to exchange '{}' with routing key '{}': {}", exchange, routingKey, result);
+        return result;
+    }
+
+    private void acquire(Semaphore window, int permits) throws IOException {
+        try {
+            if (!window.tryAcquire(permits, confirmTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Publisher confirms not received after " + confirmTimeoutMillis + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for publisher confirms", e);
+        }
+    }
+
+    private static int settle(ConcurrentNavigableMap<Long, Boolean> outstanding, Semaphore window,
+                              long deliveryTag, boolean multiple) {
+        int count;
+        if (multiple) {
+            ConcurrentNavigableMap<Long, Boolean> settled = outstanding.headMap(deliveryTag, true);
+            count = settled.size();
+            settled.clear();
+        } else {
+            count = outstanding.remove(deliveryTag) != null ? 1 : 0;
+        }
+        window.release(count);
+        return count;
+    }
+}
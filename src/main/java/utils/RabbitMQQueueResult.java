@@ -0,0 +1,83 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Messages read from one queue of a multi-queue read, or the error that stopped the read
+ */
+public class RabbitMQQueueResult {
+    /**
+     * Expected count of a read that takes whatever the queue has, such as a drain
+     */
+    public static final int ANY_COUNT = -1;
+
+    private final String queueName;
+    private final List<RabbitMQMessage> messages;
+    private final int expectedCount;
+    private final Throwable error;
+    private final long elapsedMillis;
+
+    RabbitMQQueueResult(String queueName, List<RabbitMQMessage> messages, int expectedCount, Throwable error,
+                        long elapsedMillis) {
+        this.queueName = queueName;
+        this.messages = Collections.unmodifiableList(messages);
+        this.expectedCount = expectedCount;
+        this.error = error;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public String getQueueName() {
+        return queueName;
+    }
+
+    public List<RabbitMQMessage> getMessages() {
+        return messages;
+    }
+
+    public List<String> getMessagesAsString() {
+        List<String> bodies = new ArrayList<>(messages.size());
+        messages.forEach(message -> bodies.add(message.asString()));
+        return bodies;
+    }
+
+    public int getMessageCount() {
+        return messages.size();
+    }
+
+    /**
+     * @return Number of messages waited for, {@link #ANY_COUNT} when the read took whatever the queue had
+     */
+    public int getExpectedCount() {
+        return expectedCount;
+    }
+
+    /**
+     * @return Error raised while reading the queue, null when the read succeeded
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * @return True when the queue was read without error and, if a count was expected, it was reached
+     */
+    public boolean isSuccess() {
+        return error == null && messages.size() >= expectedCount;
+    }
+
+    /**
+     * @return Time spent on this queue, from the start of the multi-queue read
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d%s message(s) in %d ms%s", queueName, messages.size(),
+                expectedCount == ANY_COUNT ? "" : " of " + expectedCount, elapsedMillis,
+                error == null ? "" : ", error: " + error.getMessage());
+    }
+}
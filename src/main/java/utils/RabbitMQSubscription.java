@@ -0,0 +1,182 @@
+package utils;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Push based reader of one queue. The broker delivers messages into a bounded in-memory buffer and
+ * the test blocks on the buffer until it has enough messages or the deadline is reached, there is
+ * no polling of the queue.
+ * <p>
+ * The buffer is bounded by the channel prefetch: the broker never has more than {@code capacity}
+ * un-acknowledged deliveries in flight, and a message is acknowledged only once the test took it. Waiting for more
+ * messages than the capacity acknowledges every {@code capacity / 2} messages so the broker keeps delivering.
+ * Messages still in the buffer when the subscription is closed go back to the queue.
+ */
+public class RabbitMQSubscription implements AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 1000;
+    private static final Logger LOGGER = LoggerManager.getInstance();
+
+    private final String queueName;
+    private final Channel channel;
+    private final BlockingQueue<Delivery> buffer;
+    private final String consumerTag;
+    private final int ackBatch;
+    private volatile boolean cancelled;
+
+    private RabbitMQSubscription(String queueName, Channel channel, int capacity) throws IOException {
+        this.queueName = queueName;
+        this.channel = channel;
+        this.buffer = new LinkedBlockingQueue<>(capacity);
+        this.ackBatch = Math.max(1, capacity / 2);
+        channel.basicQos(capacity);
+        this.consumerTag = channel.basicConsume(queueName, false, new DefaultConsumer(channel) {
+            @Override
+            public void handleDelivery(String tag, Envelope envelope, AMQP.BasicProperties properties, byte[] body) {
+                // Never blocks: prefetch keeps the number of deliveries at or below the buffer capacity
+                buffer.offer(new Delivery(envelope.getDeliveryTag(), body));
+            }
+
+            @Override
+            public void handleCancel(String tag) {
+                cancelled = true;
+                LOGGER.warn("Subscription on queue {} was cancelled by the broker", queueName);
+            }
+        });
+    }
+
+    /**
+     * Start consuming the queue
+     *
+     * @param queueName Queue name
+     * @param capacity  Maximum number of messages kept in memory
+     * @return Subscription, to be closed by the caller
+     * @throws IOException      IO Exception
+     * @throws TimeoutException Timeout Exception
+     */
+    public static RabbitMQSubscription subscribe(String queueName, int capacity) throws IOException, TimeoutException {
+        // The channel stays busy with the consumer for the whole subscription, so it is not taken from the pool
+        Channel channel = RabbitMQConnectionManager.getInstance().getConnection().createChannel();
+        try {
+            return new RabbitMQSubscription(queueName, channel, capacity);
+        } catch (IOException e) {
+            if (channel.isOpen()) {
+                try {
+                    channel.close();
+                } catch (IOException | TimeoutException ignored) {
+                    // Nothing else to release
+                }
+            }
+            throw e;
+        }
+    }
+
+    public String getQueueName() {
+        return queueName;
+    }
+
+    /**
+     * @return Number of messages received and not taken yet
+     */
+    public int size() {
+        return buffer.size();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Block until the next message arrives
+     *
+     * @param timeoutMillis Maximum time to wait
+     * @return Message, or null when nothing arrived in time
+     * @throws InterruptedException Interrupted Exception
+     * @throws IOException          When the acknowledgement cannot be sent
+     */
+    public RabbitMQMessage awaitMessage(long timeoutMillis) throws InterruptedException, IOException {
+        Delivery delivery = buffer.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (delivery == null) {
+            return null;
+        }
+        channel.basicAck(delivery.deliveryTag, false);
+        return delivery.message;
+    }
+
+    /**
+     * Block until {@code expected} messages arrived or the deadline is reached
+     *
+     * @param expected      Number of messages to wait for
+     * @param timeoutMillis Maximum time to wait
+     * @return Received messages, fewer than expected when the deadline was reached
+     * @throws InterruptedException Interrupted Exception
+     * @throws IOException          When the acknowledgement cannot be sent
+     */
+    public List<RabbitMQMessage> awaitMessages(int expected, long timeoutMillis) throws InterruptedException, IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        List<RabbitMQMessage> messages = new ArrayList<>(Math.min(expected, DEFAULT_CAPACITY));
+        long lastDeliveryTag = -1;
+        int unacknowledged = 0;
+        while (messages.size() < expected) {
+            long remaining = deadline - System.nanoTime();
+            Delivery delivery = remaining > 0 ? buffer.poll(remaining, TimeUnit.NANOSECONDS) : buffer.poll();
+            if (delivery == null) {
+                break;
+            }
+            messages.add(delivery.message);
+            lastDeliveryTag = delivery.deliveryTag;
+            if (++unacknowledged >= ackBatch) {
+                // Free prefetch credit before the window is exhausted, otherwise the broker stops at capacity
+                channel.basicAck(lastDeliveryTag, true);
+                unacknowledged = 0;
+            }
+        }
+        if (unacknowledged > 0) {
+            // Deliveries are taken in order, so one ack covers every message taken since the last one
+            channel.basicAck(lastDeliveryTag, true);
+        }
+        if (messages.size() < expected) {
+            LOGGER.warn("Received {} of {} expected messages on queue {} after {} ms",
+                    messages.size(), expected, queueName, timeoutMillis);
+        }
+        return messages;
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (channel.isOpen()) {
+                if (!cancelled) {
+                    channel.basicCancel(consumerTag);
+                }
+                // Closing the channel puts back any message still in the buffer
+                channel.close();
+            }
+        } catch (IOException | TimeoutException e) {
+            LOGGER.warn("Cannot close subscription on queue {}: {}", queueName, e.getMessage());
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    private static class Delivery {
+        private final long deliveryTag;
+        private final RabbitMQMessage message;
+
+        private Delivery(long deliveryTag, byte[] body) {
+            this.deliveryTag = deliveryTag;
+            this.message = RabbitMQMessage.of(body);
+        }
+    }
+}
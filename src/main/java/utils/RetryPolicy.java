@@ -0,0 +1,201 @@
+package utils;
+
+import exceptions.CircuitBreakerOpenException;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * Retry an operation with exponential backoff and jitter, within an attempt count and a time budget.
+ * <p>
+ * Only the errors accepted by {@link #retryOn(Predicate)} are retried, any other error is raised immediately.
+ * An optional {@link CircuitBreaker} makes every caller of a service fail fast once it keeps failing.
+ * Settings can be overridden by system properties named after the policy, see {@link #withSystemProperties()}, which
+ * is called last so that the properties win over the values set in code.
+ */
+public class RetryPolicy {
+    private static final Logger LOGGER = LoggerManager.getInstance();
+
+    private final String name;
+    private int maxAttempts = 3;
+    private long initialDelayMillis = 1000;
+    private long maxDelayMillis = 10000;
+    private double multiplier = 2.0;
+    private double jitter = 0.5;
+    private long deadlineMillis;
+    private Predicate<Throwable> retryOn = e -> true;
+    private Predicate<Throwable> failureOn = e -> true;
+    private CircuitBreaker circuitBreaker;
+
+    private RetryPolicy(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param name Operation name, for logging and system properties
+     * @return Policy with 3 attempts, delays doubling from 1s up to 10s with 50% jitter and no deadline
+     */
+    public static RetryPolicy named(String name) {
+        return new RetryPolicy(name);
+    }
+
+    /**
+     * Let {@code <name>.maxAttempts}, {@code .initialDelayMillis}, {@code .maxDelayMillis}, {@code .multiplier},
+     * {@code .jitter} and {@code .deadlineMillis} system properties override the values set so far
+     *
+     * @return This policy
+     */
+    public RetryPolicy withSystemProperties() {
+        this.maxAttempts = Integer.getInteger(name + ".maxAttempts", maxAttempts);
+        this.initialDelayMillis = Long.getLong(name + ".initialDelayMillis", initialDelayMillis);
+        this.maxDelayMillis = Long.getLong(name + ".maxDelayMillis", maxDelayMillis);
+        this.multiplier = Double.parseDouble(System.getProperty(name + ".multiplier", String.valueOf(multiplier)));
+        this.jitter = Double.parseDouble(System.getProperty(name + ".jitter", String.valueOf(jitter)));
+        this.deadlineMillis = Long.getLong(name + ".deadlineMillis", deadlineMillis);
+        return this;
+    }
+
+    public RetryPolicy maxAttempts(int maxAttempts) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        return this;
+    }
+
+    /**
+     * @param initialDelayMillis Delay before the second attempt
+     * @param maxDelayMillis     Longest delay between two attempts
+     * @param multiplier         Growth of the delay after each attempt
+     */
+    public RetryPolicy backoff(long initialDelayMillis, long maxDelayMillis, double multiplier) {
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = Math.max(initialDelayMillis, maxDelayMillis);
+        this.multiplier = multiplier;
+        return this;
+    }
+
+    /**
+     * @param jitter Share of each delay that is randomized, from 0 (fixed delays) to 1 (anywhere from 0 to the delay)
+     */
+    public RetryPolicy jitter(double jitter) {
+        this.jitter = Math.max(0, Math.min(1, jitter));
+        return this;
+    }
+
+    /**
+     * @param deadlineMillis Time budget of all attempts and delays, 0 for none. No attempt starts after it.
+     */
+    public RetryPolicy deadline(long deadlineMillis) {
+        this.deadlineMillis = deadlineMillis;
+        return this;
+    }
+
+    /**
+     * @param retryOn Errors worth another attempt
+     */
+    public RetryPolicy retryOn(Predicate<Throwable> retryOn) {
+        this.retryOn = retryOn;
+        return this;
+    }
+
+    /**
+     * @param circuitBreaker Breaker of the called service
+     * @param failureOn      Errors that mean the service is failing, other errors count as a working service
+     */
+    public RetryPolicy circuitBreaker(CircuitBreaker circuitBreaker, Predicate<Throwable> failureOn) {
+        this.circuitBreaker = circuitBreaker;
+        this.failureOn = failureOn;
+        return this;
+    }
+
+    /**
+     * Call the operation until it succeeds
+     *
+     * @param operation Operation
+     * @param <T>       Result type
+     * @param <E>       Error type of the operation
+     * @return Result of the first successful attempt
+     * @throws E                           Last error when attempts or time ran out, or the first error not retried
+     * @throws InterruptedException        Interrupted Exception
+     * @throws CircuitBreakerOpenException CircuitBreakerOpen Exception
+     */
+    public <T, E extends Exception> T call(Operation<T, E> operation) throws E, InterruptedException {
+        return this.callUntil(operation, result -> true);
+    }
+
+    /**
+     * Call the operation until it succeeds with an accepted result
+     *
+     * @param operation Operation
+     * @param accept    Results that end the retries, e.g. a non-empty queue
+     * @param <T>       Result type
+     * @param <E>       Error type of the operation
+     * @return First accepted result, or the last result when attempts or time ran out
+     * @throws E                           Last error when attempts or time ran out, or the first error not retried
+     * @throws InterruptedException        Interrupted Exception
+     * @throws CircuitBreakerOpenException CircuitBreakerOpen Exception
+     */
+    public <T, E extends Exception> T callUntil(Operation<T, E> operation, Predicate<? super T> accept) throws E, InterruptedException {
+        long start = System.currentTimeMillis();
+        long delay = initialDelayMillis;
+        for (int attempt = 1; ; attempt++) {
+            if (circuitBreaker != null) {
+                circuitBreaker.acquire();
+            }
+
+            boolean settled = false;
+            try {
+                T result = operation.call();
+                settled = true;
+                if (circuitBreaker != null) {
+                    circuitBreaker.onSuccess();
+                }
+                boolean last = isLastAttempt(attempt, start, delay);
+                if (accept.test(result) || last) {
+                    return result;
+                }
+                LOGGER.debug("{}: attempt {} returned {}, retrying", name, attempt, result);
+            } catch (Exception e) {
+                settled = true;
+                if (circuitBreaker != null) {
+                    if (failureOn.test(e)) {
+                        circuitBreaker.onFailure();
+                    } else {
+                        circuitBreaker.onSuccess();
+                    }
+                }
+                boolean last = isLastAttempt(attempt, start, delay);
+                if (e instanceof InterruptedException || !retryOn.test(e) || last) {
+                    if (attempt > 1) {
+                        LOGGER.warn("{}: giving up after {} attempt(s) in {} ms: {}", name, attempt,
+                                System.currentTimeMillis() - start, e.getMessage());
+                    }
+                    throw e;
+                }
+                LOGGER.info("{}: attempt {} failed, retrying in about {} ms: {}", name, attempt, delay, e.getMessage());
+            } finally {
+                if (!settled && circuitBreaker != null) {
+                    // An Error says nothing about the service, but must not keep a trial call pending forever
+                    circuitBreaker.release();
+                }
+            }
+
+            Thread.sleep(jittered(delay));
+            delay = Math.min(maxDelayMillis, (long) (delay * multiplier));
+        }
+    }
+
+    private boolean isLastAttempt(int attempt, long start, long nextDelay) {
+        return attempt >= maxAttempts
+                || deadlineMillis > 0 && System.currentTimeMillis() + nextDelay - start >= deadlineMillis;
+    }
+
+    private long jittered(long delay) {
+        long randomized = (long) (delay * jitter);
+        return delay - (randomized > 0 ? ThreadLocalRandom.current().nextLong(randomized + 1) : 0);
+    }
+
+    @FunctionalInterface
+    public interface Operation<T, E extends Exception> {
+        T call() throws E;
+    }
+}
@@ -1,22 +1,29 @@
 package utils;
 
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.SftpException;
 import lombok.SneakyThrows;
 import lombok.extern.log4j.Log4j;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.zip.ZipEntry;
 
+@Log4j
 public class SFTP {
 
         public static final String PRIVATE_KEY_DIR = "src/main/resources/private_key";
         private final SftpConfig sftpConfig;
 
-        public SFTPUtils(SftpConfig sftpConfig) {
+        public SFTP(SftpConfig sftpConfig) {
             this.sftpConfig = sftpConfig;
         }
 
@@ -24,6 +31,31 @@ public class SFTP {
             return sftpConfig;
         }
 
+        /**
+         * Forget cached metadata of a remote file or directory changed outside of this helper
+         *
+         * @param remotePath Remote file or directory
+         */
+        public void invalidateMetadataCache(String remotePath) {
+            SftpMetadataCache.getInstance().invalidate(SftpMetadataCache.serverOf(this.getSftpConfig()), remotePath);
+        }
+
+        /**
+         * Look a remote path up through the metadata cache of this server
+         *
+         * @param remotePath Remote path the value describes
+         * @param qualifier  Kind of lookup
+         * @param loader     Lookup on the server, a null result is not cached
+         * @return Cached or loaded value
+         * @throws SftpException SFTP Exception
+         * @throws JSchException JSCH Exception
+         * @throws IOException   IO Exception
+         */
+        @SneakyThrows
+        private Object cached(String remotePath, String qualifier, SftpMetadataCache.Loader<Object> loader) throws SftpException, JSchException, IOException {
+            return SftpMetadataCache.getInstance().get(SftpMetadataCache.serverOf(this.getSftpConfig()), remotePath, qualifier, loader);
+        }
+
         /**
          * Download latest file with comparator
          *
@@ -39,32 +71,29 @@ public class SFTP {
          */
         public String downloadLatestFileWithComparator(String fileNamePrefix, String remoteDir, FileExtension fileExtension, String localDir, Comparator<ChannelSftp.LsEntry> fileComparator) throws JSchException, SftpException, IOException {
             return (String) this.execute((channelSftp) -> {
-                Vector<ChannelSftp.LsEntry> files = channelSftp.ls(remoteDir);
-                ChannelSftp.LsEntry latestEntry = files.stream().filter((entry) -> {
-                    return !".".equals(entry.getFilename()) && !"..".equals(entry.getFilename());
-                }).filter((entry) -> {
-                    return entry.getFilename().toLowerCase().endsWith(fileExtension.getExtension());
-                }).filter((entry) -> {
-                    return entry.getFilename().startsWith(fileNamePrefix);
-                }).peek((entry) -> {
-                    log.info("Remote file: " + entry.getFilename());
-                }).max(fileComparator).orElse(null);
-                if (Objects.isNull(latestEntry)) {
-                    return null;
-                } else {
-                    Path localDirPath = Paths.get(localDir);
-                    if (!localDirPath.toFile().exists()) {
-                        Files.createDirectory(localDirPath);
-                    }
+                ChannelSftp.LsEntry latestEntry = SftpDirectoryScanner.max(channelSftp, remoteDir,
+                        SftpDirectoryScanner.filter(fileNamePrefix, fileExtension), fileComparator);
+                return this.downloadEntry(channelSftp, remoteDir, localDir, latestEntry);
+            });
+        }
 
-                    String downloadedFile = Paths.get(localDir, latestEntry.getFilename()).toString();
-                    String remoteFileAbsPath = remoteDir + "/" + latestEntry.getFilename();
-                    log.info("Downloading remote file " + remoteFileAbsPath);
-                    channelSftp.get(remoteFileAbsPath, downloadedFile);
-                    log.info("File downloaded at " + downloadedFile);
-                    return downloadedFile;
+        private String downloadEntry(ChannelSftp channelSftp, String remoteDir, String localDir, ChannelSftp.LsEntry latestEntry) throws SftpException, IOException {
+            if (Objects.isNull(latestEntry)) {
+                return null;
+            } else {
+                log.info("Remote file: " + latestEntry.getFilename());
+                Path localDirPath = Paths.get(localDir);
+                if (!localDirPath.toFile().exists()) {
+                    Files.createDirectory(localDirPath);
                 }
-            });
+
+                String downloadedFile = Paths.get(localDir, latestEntry.getFilename()).toString();
+                String remoteFileAbsPath = remoteDir + "/" + latestEntry.getFilename();
+                log.info("Downloading remote file " + remoteFileAbsPath);
+                channelSftp.get(remoteFileAbsPath, downloadedFile);
+                log.info("File downloaded at " + downloadedFile);
+                return downloadedFile;
+            }
         }
 
         /**
@@ -80,59 +109,36 @@ public class SFTP {
             return this.execute(this.getSftpConfig(), callback);
         }
 
+        /**
+         * Run the callback on a pooled SFTP channel, the SSH session is reused across calls
+         *
+         * @param config   SFTP configuration
+         * @param callback Callback
+         * @return Returned value
+         */
         @SneakyThrows
         private Object execute(SftpConfig config, SftpCallback callback) {
-            JSch jSch = new JSch();
-            Session session;
-            if (config.isUsePhysicalKey() || config.getKeyContent() != null) {
-                String pathFileKey;
-                byte[] bytes;
-
-                if (config.isUsePhysicalKey()) {
-                    pathFileKey = PRIVATE_KEY_DIR + File.separator + "sftp_export_data_warehouse.ppk";
-                    log.info("Private key path: " + pathFileKey);
-                    jSch.addIdentity(pathFileKey);
-                } else {
-                    bytes = config.getKeyContent().getBytes();
-                    jSch.addIdentity("private Key", bytes, null, null);
-                }
-
-                session = jSch.getSession(config.getUsername(), config.getHost(), config.getPort());
-            } else {
-                session = jSch.getSession(config.getUsername(), config.getHost(), config.getPort());
-                if (config.getPassword() != null) {
-                    session.setPassword(config.getPassword());
-                }
-            }
-            session.setConfig("StrictHostKeyChecking", "no");
-            session.connect();
-            ChannelSftp channel = (ChannelSftp) session.openChannel("sftp");
-            channel.connect();
-
-            Object var5;
             try {
-                var5 = callback.execute(channel);
+                return SftpSessionPool.getInstance().execute(config, callback);
             } catch (Exception var9) {
                 log.error("SFTP error on execution: " + var9.getMessage());
                 throw var9;
-            } finally {
-                channel.disconnect();
-                session.disconnect();
             }
-
-            return var5;
         }
 
         /**
          * Download file from remote then unzip if it is compressed file and then get a specific
-         * file from unzipped files
+         * file from unzipped files. Compressed exports are extracted while they are downloaded,
+         * see {@link SftpZipExtractor}. When the latest zip file has no such file, or when the zip file itself is
+         * asked for, the latest remote file with the extension is downloaded instead.
          *
          * @param dstAbsolutePath Destination folder
          * @param fileExtension   File type
          * @param fileNamePrefix  File name prefix
          * @param localDir        Local directory where we get a file from
          * @return File
-         * @throws Exception Exception
+         * @throws FileNotFoundException When no remote file has the prefix and extension
+         * @throws Exception             Exception
          */
         public File getFile(String dstAbsolutePath, FileExtension fileExtension, String fileNamePrefix, String localDir) throws Exception {
             String filePath = null;
@@ -140,12 +146,19 @@ public class SFTP {
             if (!file.exists()) {
                 log.info("No file available in local = " + localDir);
                 log.info("Finding latest file from the remote = " + dstAbsolutePath);
-                filePath = this.downloadLatestFile(fileNamePrefix, dstAbsolutePath, fileExtension, localDir);
-                log.info("Downloaded latest file = " + filePath);
-                if (fileNamePrefix.equalsIgnoreCase("SAMDataExtracts_")) {
+                file = null;
+                if (fileNamePrefix.equalsIgnoreCase("SAMDataExtracts_") && !FileExtension.ZIP.equals(fileExtension)) {
                     log.info("Extracting the .zip file");
-                    file = new File(localDir + fileNamePrefix + fileExtension.getExtension());
-                } else {
+                    List<Path> extracted = this.extractLatestZip(fileNamePrefix, dstAbsolutePath, localDir, SftpZipExtractor.filter(fileExtension));
+                    file = this.findExtractedFile(extracted, fileNamePrefix, fileExtension);
+                }
+                if (file == null) {
+                    filePath = this.downloadLatestFile(fileNamePrefix, dstAbsolutePath, fileExtension, localDir);
+                    if (filePath == null) {
+                        throw new FileNotFoundException("No " + fileExtension.getExtension() + " file starting with "
+                                + fileNamePrefix + " in " + dstAbsolutePath);
+                    }
+                    log.info("Downloaded latest file = " + filePath);
                     file = new File(filePath);
                 }
             }
@@ -154,6 +167,34 @@ public class SFTP {
             return file;
         }
 
+        /**
+         * Pick the extracted file named after the prefix, or else the first extracted file starting with it
+         *
+         * @param extracted      Extracted files
+         * @param fileNamePrefix File name prefix
+         * @param fileExtension  File type
+         * @return Extracted file, null when no zip file was found or it has no such file
+         */
+        private File findExtractedFile(List<Path> extracted, String fileNamePrefix, FileExtension fileExtension) {
+            String expectedName = fileNamePrefix + fileExtension.getExtension();
+            Path match = null;
+            for (Path path : extracted) {
+                String name = path.getFileName().toString();
+                if (name.equals(expectedName)) {
+                    return path.toFile();
+                }
+                if (match == null && name.startsWith(fileNamePrefix) && name.endsWith(fileExtension.getExtension())) {
+                    match = path;
+                }
+            }
+            if (match == null) {
+                log.info("No " + fileExtension.getExtension() + " file starting with " + fileNamePrefix
+                        + " was extracted from the latest zip file, extracted: " + extracted);
+                return null;
+            }
+            return match.toFile();
+        }
+
         /**
          * Download latest file
          *
@@ -167,9 +208,63 @@ public class SFTP {
          * @throws IOException   IO Exception
          */
         public String downloadLatestFile(String fileNamePrefix, String remoteDir, FileExtension fileExtension, String localDir) throws JSchException, SftpException, IOException {
-            return this.downloadLatestFileWithComparator(fileNamePrefix, remoteDir, fileExtension, localDir, Comparator.comparing((o) -> {
-                return this.getFileTimestamp(o.getFilename());
-            }));
+            // The timestamp is parsed once per listed entry instead of on every comparison
+            return (String) this.execute((channelSftp) -> {
+                ChannelSftp.LsEntry latestEntry = SftpDirectoryScanner.latest(channelSftp, remoteDir,
+                        SftpDirectoryScanner.filter(fileNamePrefix, fileExtension), (o) -> this.getFileTimestamp(o.getFilename()));
+                return this.downloadEntry(channelSftp, remoteDir, localDir, latestEntry);
+            });
+        }
+
+        /**
+         * Extract the selected entries of the latest zip file while it is downloaded, the archive itself is not
+         * written to disk
+         *
+         * @param fileNamePrefix File name prefix
+         * @param remoteDir      Remote directory
+         * @param localDir       Local directory to extract entries to
+         * @param entryFilter    Entry filter, see {@link SftpZipExtractor#filter(FileExtension)}
+         * @return Extracted files, empty when no zip file is found
+         * @throws JSchException JSCH Exception
+         * @throws SftpException SFTP Exception
+         * @throws IOException   IO Exception
+         */
+        @SuppressWarnings("unchecked")
+        public List<Path> extractLatestZip(String fileNamePrefix, String remoteDir, String localDir, Predicate<ZipEntry> entryFilter) throws JSchException, SftpException, IOException {
+            return (List<Path>) this.execute((channelSftp) -> {
+                ChannelSftp.LsEntry latestEntry = SftpDirectoryScanner.latest(channelSftp, remoteDir,
+                        SftpDirectoryScanner.filter(fileNamePrefix, FileExtension.ZIP), (o) -> this.getFileTimestamp(o.getFilename()));
+                if (Objects.isNull(latestEntry)) {
+                    return Collections.emptyList();
+                }
+                log.info("Remote file: " + latestEntry.getFilename());
+                return SftpZipExtractor.extract(channelSftp, remoteDir + "/" + latestEntry.getFilename(), Paths.get(localDir), entryFilter);
+            });
+        }
+
+        /**
+         * Stream the selected entries of the latest zip file to a handler, so they can be validated while the
+         * archive is still being downloaded
+         *
+         * @param fileNamePrefix File name prefix
+         * @param remoteDir      Remote directory
+         * @param entryFilter    Entry filter
+         * @param handler        Entry handler
+         * @return Name of the streamed zip file, null when no zip file is found
+         * @throws JSchException JSCH Exception
+         * @throws SftpException SFTP Exception
+         * @throws IOException   IO Exception
+         */
+        public String readLatestZip(String fileNamePrefix, String remoteDir, Predicate<ZipEntry> entryFilter, SftpZipExtractor.EntryHandler handler) throws JSchException, SftpException, IOException {
+            return (String) this.execute((channelSftp) -> {
+                ChannelSftp.LsEntry latestEntry = SftpDirectoryScanner.latest(channelSftp, remoteDir,
+                        SftpDirectoryScanner.filter(fileNamePrefix, FileExtension.ZIP), (o) -> this.getFileTimestamp(o.getFilename()));
+                if (Objects.isNull(latestEntry)) {
+                    return null;
+                }
+                SftpZipExtractor.forEach(channelSftp, remoteDir + "/" + latestEntry.getFilename(), entryFilter, handler);
+                return latestEntry.getFilename();
+            });
         }
 
         private String getFileTimestamp(String fileName) {
@@ -178,36 +273,22 @@ public class SFTP {
 
         /**
          * Wait for a file being uploaded to SFTP by comparing last modification time of files in SFTP
-         * with current time
+         * with the one before the export. The folder is checked often at first then less often, see
+         * {@link SftpFileWatcher}, and the wait ends as soon as the new file is completely written.
          *
          * @param fileNamePrefix            File name prefix
          * @param dstAbsolutePath           Destination folder
-         * @param currentLatestModifiedTime Current time
+         * @param currentLatestModifiedTime Last modification time before the export
          * @param minutes                   Wait time
          * @throws Exception Exception
          */
         public void waitForNewFileExportedToSftp(String fileNamePrefix, String dstAbsolutePath, String currentLatestModifiedTime, int minutes) throws Exception {
-            Wrapper wrapper = new Wrapper();
-            int milliSec = minutes * 60 * 1000;
-            boolean flag = true;
-
-            do {
-                if (!flag) {
-                    wrapper.holdOn(10000);
-                    return;
-                }
-
-                for (int i = 0; i <= milliSec; i += 60000) {
-                    wrapper.holdOn(60000);
-                    String latestModifiedTime = this.getLatestModifiedTimeInSftpDirectory(fileNamePrefix, dstAbsolutePath);
-                    if (!latestModifiedTime.equals(currentLatestModifiedTime)) {
-                        flag = false;
-                        break;
-                    }
-                }
-            } while (!flag);
-
-            throw new Error("No file is exported to sftp after " + minutes + " minutes!!!");
+            SftpFileWatcher.WatchedFile newEntry = new SftpFileWatcher(this).awaitNewFile(dstAbsolutePath,
+                    SftpDirectoryScanner.filter(fileNamePrefix, FileExtension.ZIP), currentLatestModifiedTime, TimeUnit.MINUTES.toMillis(minutes));
+            if (newEntry == null) {
+                throw new Error("No file is exported to sftp after " + minutes + " minutes!!!");
+            }
+            log.info("New file exported to sftp: " + newEntry.getFilename() + ", modified at " + newEntry.getAttrs().getMtimeString());
         }
 
         /**
@@ -235,7 +316,7 @@ public class SFTP {
         }
 
         /**
-         * Get the latest file in SFTP folder
+         * Get the latest file in SFTP folder. The result is cached per directory, see {@link SftpMetadataCache}
          *
          * @param fileNamePrefix File name prefix
          * @param remoteDir      Remote directory
@@ -246,23 +327,25 @@ public class SFTP {
          * @throws IOException   IO Exception
          */
         public ChannelSftp.LsEntry getLatestFileInSftpDirectory(String fileNamePrefix, String remoteDir, FileExtension fileExtension) throws JSchException, SftpException, IOException {
-            return (ChannelSftp.LsEntry) this.execute((channelSftp) -> {
-                Vector<ChannelSftp.LsEntry> files = channelSftp.ls(remoteDir);
-                ChannelSftp.LsEntry latestEntry = files.stream().filter((entry) -> {
-                    return !".".equals(entry.getFilename()) && !"..".equals(entry.getFilename());
-                }).filter((entry) -> {
-                    return entry.getFilename().toLowerCase().endsWith(fileExtension.getExtension());
-                }).filter((entry) -> {
-                    return entry.getFilename().startsWith(fileNamePrefix);
-                }).peek((entry) -> {
-                    log.info("Found remote file: " + entry.getFilename());
-                }).max(Comparator.comparingInt((o) -> {
-                    return o.getAttrs().getMTime();
-                })).orElse(null);
-                return Objects.isNull(latestEntry) ? null : latestEntry;
-            });
+            return (ChannelSftp.LsEntry) this.cached(remoteDir, "latest:" + fileNamePrefix + fileExtension.getExtension(), () -> this.execute((channelSftp) -> {
+                ChannelSftp.LsEntry latestEntry = SftpDirectoryScanner.latest(channelSftp, remoteDir,
+                        SftpDirectoryScanner.filter(fileNamePrefix, fileExtension), (o) -> o.getAttrs().getMTime());
+                if (latestEntry != null) {
+                    log.info("Found remote file: " + latestEntry.getFilename());
+                }
+                return latestEntry;
+            }));
         }
 
+        /**
+         * Download a remote file. With {@code -Dsftp.cache.enabled=true}, a file whose size and modification
+         * time did not change since a previous download is copied from {@link SftpDownloadCache} instead.
+         *
+         * @param remoteDir      Remote folder
+         * @param localDir       Local folder
+         * @param remoteFileName Remote file name
+         * @return Downloaded file, null on error
+         */
         public File getFile(String remoteDir, String localDir, String remoteFileName) {
             try {
                 return (File) this.execute((channelSftp) -> {
@@ -275,7 +358,12 @@ public class SFTP {
                     }
 
                     log.info("Download from " + remoteAbsPath + " to " + localAbsPath);
-                    channelSftp.get(remoteAbsPath, localAbsPath);
+                    if (SftpDownloadCache.isEnabled()) {
+                        SftpDownloadCache.getInstance().get(channelSftp, SftpMetadataCache.serverOf(this.getSftpConfig()),
+                                remoteAbsPath, Paths.get(localAbsPath));
+                    } else {
+                        channelSftp.get(remoteAbsPath, localAbsPath);
+                    }
                     log.info("Download successfully to " + localAbsPath);
                     return new File(localAbsPath);
                 });
@@ -285,43 +373,83 @@ public class SFTP {
             }
         }
 
-        public void sftpSendFile(String srcAbsolutePath, String dstAbsolutePath) throws SftpException, IOException, InterruptedException {
-            int retryConnectionCount = 3;
-            boolean verify = false;
-
-            while (!verify && retryConnectionCount > 0) {
-                try {
-                    this.execute((channelSftp) -> {
-                        channelSftp.put(srcAbsolutePath, dstAbsolutePath);
-                        return null;
-                    });
-                    verify = true;
-                    log.info("Successfully uploaded file " + srcAbsolutePath + " to " + dstAbsolutePath);
-                } catch (JSchException var6) {
-                    log.error("sftpSendFile fail by error", var6);
-                    log.info("retryConnectionCount = " + retryConnectionCount);
-                    log.info("Sleeping 10 seconds ... ");
-                    Thread.sleep(10000L);
-                    --retryConnectionCount;
-                }
+        /**
+         * Upload a file. A failed attempt is retried from the bytes already uploaded, see {@link SftpResumableTransfer}
+         *
+         * @param srcAbsolutePath Local file
+         * @param dstAbsolutePath Remote file or folder
+         * @return Transfer metrics, null when every attempt failed to connect
+         * @throws SftpException        SFTP Exception
+         * @throws IOException          IO Exception
+         * @throws InterruptedException Interrupted Exception
+         */
+        public SftpTransferMetrics sftpSendFile(String srcAbsolutePath, String dstAbsolutePath) throws SftpException, IOException, InterruptedException {
+            try {
+                SftpTransferMetrics metrics = SftpResumableTransfer.upload(this.getSftpConfig(), srcAbsolutePath, dstAbsolutePath);
+                this.invalidateMetadataCache(dstAbsolutePath);
+                log.info("Successfully uploaded file " + srcAbsolutePath + " to " + dstAbsolutePath);
+                return metrics;
+            } catch (SftpException | IOException | InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                log.error("sftpSendFile fail by error", e);
+                return null;
             }
-
         }
 
+        /**
+         * Check that every file exists in a remote folder. All files are checked at once on pooled channels,
+         * only the files missing at that moment are retried one by one.
+         *
+         * @param dstAbsolutePath Remote folder, ending with a separator
+         * @param fileNames       File names
+         * @return True when every file exists
+         * @throws InterruptedException Interrupted Exception
+         */
         public boolean isSftpListFileExisted(String dstAbsolutePath, List<String> fileNames) throws InterruptedException {
-            Iterator var3 = fileNames.iterator();
+            List<String> remotePaths = new ArrayList<>(fileNames.size());
+            fileNames.forEach(fileName -> remotePaths.add(dstAbsolutePath + fileName));
+            SftpBatchResult result = new SftpBulkTransfer(this).exists(remotePaths);
 
-            boolean isExist;
-            do {
-                if (!var3.hasNext()) {
-                    return true;
+            for (SftpTransferOutcome outcome : result.getFailures()) {
+                if (!this.getFile(outcome.getTransfer().getSource(), 5)) {
+                    return false;
                 }
+            }
+            return true;
+        }
 
-                String filename = (String) var3.next();
-                isExist = this.getFile(dstAbsolutePath + filename, 5);
-            } while (isExist);
+        /**
+         * Upload files in parallel over pooled SFTP channels
+         *
+         * @param transfers Local source and remote destination of each file
+         * @return Outcome per file, with timings and throughput
+         */
+        public SftpBatchResult uploadFiles(List<SftpFileTransfer> transfers) {
+            return new SftpBulkTransfer(this).upload(transfers);
+        }
 
-            return false;
+        /**
+         * Download files in parallel over pooled SFTP channels
+         *
+         * @param transfers Remote source and local destination of each file
+         * @return Outcome per file, with timings and throughput
+         */
+        public SftpBatchResult downloadFiles(List<SftpFileTransfer> transfers) {
+            return new SftpBulkTransfer(this).download(transfers);
+        }
+
+        /**
+         * Delete files of a remote folder in parallel over pooled SFTP channels
+         *
+         * @param sftpFolder SFTP folder
+         * @param fileNames  File names
+         * @return Outcome per file
+         */
+        public SftpBatchResult deleteFiles(String sftpFolder, List<String> fileNames) {
+            List<String> remotePaths = new ArrayList<>(fileNames.size());
+            fileNames.forEach(fileName -> remotePaths.add(sftpFolder + "/" + fileName));
+            return new SftpBulkTransfer(this).delete(remotePaths);
         }
 
         public boolean isFileExistedOnSFTP(String dstAbsolutePath, File file) throws InterruptedException {
@@ -330,24 +458,19 @@ public class SFTP {
         }
 
         private boolean getFile(String dstAbsolutePath, int retryCount) throws InterruptedException {
-            AtomicBoolean isExisted = new AtomicBoolean(false);
-            while (!isExisted.get() && retryCount > 0) {
-                try {
-                    this.execute((channelSftp) -> {
-                        channelSftp.stat(dstAbsolutePath);
-                        isExisted.set(true);
-                        return true;
-                    });
-                } catch (JSchException | IOException | SftpException var5) {
-                    log.info("Given file is not available in SFTP folder yet. " + var5.getMessage());
-                    log.info("retryCount = " + retryCount);
-                    log.info("Sleeping 10 seconds ... ");
-                    Thread.sleep(10000L);
-                    --retryCount;
-                }
+            try {
+                SftpSessionPool.retryPolicy("sftp.exists", this.getSftpConfig()).maxAttempts(retryCount).withSystemProperties()
+                        .call(() -> this.cached(dstAbsolutePath, "stat", () -> this.execute((channelSftp) -> {
+                            channelSftp.stat(dstAbsolutePath);
+                            return true;
+                        })));
+                return true;
+            } catch (InterruptedException var4) {
+                throw var4;
+            } catch (Exception var5) {
+                log.info("Given file is not available in SFTP folder yet. " + var5.getMessage());
+                return false;
             }
-
-            return isExisted.get();
         }
 
         /**
@@ -365,6 +488,7 @@ public class SFTP {
 
                 try {
                     channelSftp.rm(sftpFolder + "/" + fileName);
+                    this.invalidateMetadataCache(sftpFolder + "/" + fileName);
                     log.error("Delete file successfully: " + sftpFolder + "/" + fileName);
                 } catch (Exception var7) {
                     log.error("Delete file error: " + var7.getMessage());
@@ -387,6 +511,7 @@ public class SFTP {
 
                 try {
                     channelSftp.rm(fileName);
+                    this.invalidateMetadataCache(fileName);
                     log.error("Delete file successfully: " + fileNames);
                 } catch (Exception var6) {
                     log.error("Delete file error: " + var6.getMessage());
@@ -403,39 +528,12 @@ public class SFTP {
          * @param filePath   File path
          */
         public void sendFile(SftpConfig config, String sftpFolder, String filePath) {
-            Session session = null;
-            ChannelSftp channelSftp = null;
-            int retry = 3;
-            boolean successfull = false;
-
-            while (!successfull && retry > 0) {
-                try {
-                    session = (new JSch()).getSession(config.getUsername(), config.getHost(), config.getPort());
-                    session.setConfig("StrictHostKeyChecking", "no");
-                    session.setPassword(config.getPassword());
-                    session.connect();
-                    channelSftp = (ChannelSftp) session.openChannel("sftp");
-                    channelSftp.connect();
-                    channelSftp.put(filePath, sftpFolder);
-                    successfull = true;
-                } catch (Exception var15) {
-                    log.error("SFTP error: " + var15.getMessage());
-                    log.info("retry = " + retry);
-                    log.info("Sleeping 10 seconds ... ");
-
-                    try {
-                        Thread.sleep(10000L);
-                    } catch (InterruptedException var14) {
-                        var14.printStackTrace();
-                    }
-
-                    --retry;
-                } finally {
-                    channelSftp.disconnect();
-                    session.disconnect();
-                }
+            try {
+                SftpResumableTransfer.upload(config, filePath, sftpFolder);
+                SftpMetadataCache.getInstance().invalidate(SftpMetadataCache.serverOf(config), sftpFolder);
+            } catch (Exception var15) {
+                log.error("SFTP error: " + var15.getMessage());
             }
-
         }
 
         /**
@@ -447,37 +545,13 @@ public class SFTP {
          * @param remoteFileName Remote file name
          */
         public void getFile(SftpConfig config, String remoteDir, String localDir, String remoteFileName) {
-            Session session = null;
-            ChannelSftp channelSftp = null;
-            int retry = 3;
-            String remoteAbsPath = remoteDir + File.separator + remoteFileName;
+            String remoteAbsPath = remoteDir + "/" + remoteFileName;
             String localAbsPath = localDir + File.separator + remoteFileName;
 
-            for (Path localDirPath = Paths.get(localDir); retry > 0; --retry) {
-                try {
-                    session = (new JSch()).getSession(config.getUsername(), config.getHost(), config.getPort());
-                    session.setConfig("StrictHostKeyChecking", "no");
-                    session.setPassword(config.getPassword());
-                    session.connect();
-                    channelSftp = (ChannelSftp) session.openChannel("sftp");
-                    channelSftp.connect();
-                    if (!Files.exists(localDirPath)) {
-                        log.info("Creating directory " + localDir);
-                        Files.createDirectory(localDirPath);
-                    }
-
-                    channelSftp.get(remoteAbsPath, localAbsPath);
-                } catch (Exception var14) {
-                    log.error("SFTP error: " + var14.getMessage());
-                    log.info("retry = " + retry);
-                    log.info("Sleeping 10 seconds ... ");
-                }
-
-                try {
-                    Thread.sleep(10000L);
-                } catch (InterruptedException var13) {
-                    log.error(var13.getMessage());
-                }
+            try {
+                SftpResumableTransfer.download(config, remoteAbsPath, localAbsPath);
+            } catch (Exception var14) {
+                log.error("SFTP error: " + var14.getMessage());
             }
         }
     }
@@ -0,0 +1,54 @@
+package utils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Per-file outcomes and aggregate throughput of a batch SFTP operation
+ */
+public class SftpBatchResult {
+    private final List<SftpTransferOutcome> outcomes;
+    private final long elapsedMillis;
+
+    public SftpBatchResult(List<SftpTransferOutcome> outcomes, long elapsedMillis) {
+        this.outcomes = Collections.unmodifiableList(outcomes);
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * @return Outcomes in the order of the requested files
+     */
+    public List<SftpTransferOutcome> getOutcomes() {
+        return outcomes;
+    }
+
+    public List<SftpTransferOutcome> getFailures() {
+        return outcomes.stream().filter(outcome -> !outcome.isSuccess()).collect(Collectors.toList());
+    }
+
+    public boolean isAllSuccessful() {
+        return outcomes.stream().allMatch(SftpTransferOutcome::isSuccess);
+    }
+
+    public long getTotalBytes() {
+        return outcomes.stream().mapToLong(SftpTransferOutcome::getBytes).sum();
+    }
+
+    /**
+     * @return Wall-clock time of the whole batch
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public double getBytesPerSecond() {
+        return elapsedMillis == 0 ? getTotalBytes() : getTotalBytes() * 1000.0 / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d file(s), %d failed, %d bytes in %d ms (%.1f KB/s)", outcomes.size(),
+                getFailures().size(), getTotalBytes(), elapsedMillis, getBytesPerSecond() / 1024);
+    }
+}
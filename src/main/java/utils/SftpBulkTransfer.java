@@ -0,0 +1,186 @@
+package utils;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpException;
+import lombok.extern.log4j.Log4j;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Upload, download, delete or check many files at once, spread over a bounded number of pooled SFTP
+ * channels. Every file gets its own outcome, a failing file does not stop the others.
+ */
+@Log4j
+public class SftpBulkTransfer {
+    public static final String PARALLELISM_VARIABLE = "sftp.bulk.parallelism";
+    private static final long NOT_FOUND = -1L;
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final SFTP sftp;
+    private final int parallelism;
+
+    public SftpBulkTransfer(SFTP sftp) {
+        this(sftp, Integer.getInteger(PARALLELISM_VARIABLE, 4));
+    }
+
+    /**
+     * @param sftp        SFTP helper of the target server
+     * @param parallelism Number of concurrent channels, capped by the session pool size
+     */
+    public SftpBulkTransfer(SFTP sftp, int parallelism) {
+        this.sftp = sftp;
+        this.parallelism = Math.max(1, Math.min(parallelism, SftpSessionPool.getInstance().getMaxSessions()));
+    }
+
+    /**
+     * @param transfers Local source and remote destination of each file
+     * @return Outcome per file
+     */
+    public SftpBatchResult upload(List<SftpFileTransfer> transfers) {
+        return run("upload", transfers, transfer -> {
+            sftp.execute(channelSftp -> {
+                channelSftp.put(transfer.getSource(), transfer.getDestination());
+                return null;
+            });
+            sftp.invalidateMetadataCache(transfer.getDestination());
+            return new File(transfer.getSource()).length();
+        });
+    }
+
+    /**
+     * @param transfers Remote source and local destination of each file
+     * @return Outcome per file
+     */
+    public SftpBatchResult download(List<SftpFileTransfer> transfers) {
+        return run("download", transfers, transfer -> {
+            Path parent = Paths.get(transfer.getDestination()).toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            sftp.execute(channelSftp -> {
+                channelSftp.get(transfer.getSource(), transfer.getDestination());
+                return null;
+            });
+            return new File(transfer.getDestination()).length();
+        });
+    }
+
+    /**
+     * @param remotePaths Remote files to delete
+     * @return Outcome per file
+     */
+    public SftpBatchResult delete(List<String> remotePaths) {
+        return run("delete", toRemoteTransfers(remotePaths), transfer -> {
+            sftp.execute(channelSftp -> {
+                channelSftp.rm(transfer.getSource());
+                return null;
+            });
+            sftp.invalidateMetadataCache(transfer.getSource());
+            return 0L;
+        });
+    }
+
+    /**
+     * Check that remote files exist, a missing file is an unsuccessful outcome without error. Files known to
+     * exist by {@link SftpMetadataCache} are not checked again on the server.
+     *
+     * @param remotePaths Remote files to check
+     * @return Outcome per file
+     */
+    public SftpBatchResult exists(List<String> remotePaths) {
+        String server = SftpMetadataCache.serverOf(sftp.getSftpConfig());
+        return run("stat", toRemoteTransfers(remotePaths), transfer -> {
+            Object existed = SftpMetadataCache.getInstance().get(server, transfer.getSource(), "stat", () -> sftp.execute(channelSftp -> {
+                try {
+                    channelSftp.stat(transfer.getSource());
+                    return true;
+                } catch (SftpException e) {
+                    if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                        return null;
+                    }
+                    throw e;
+                }
+            }));
+            return existed == null ? NOT_FOUND : 0L;
+        });
+    }
+
+    private static List<SftpFileTransfer> toRemoteTransfers(List<String> remotePaths) {
+        List<SftpFileTransfer> transfers = new ArrayList<>(remotePaths.size());
+        remotePaths.forEach(remotePath -> transfers.add(SftpFileTransfer.remote(remotePath)));
+        return transfers;
+    }
+
+    private SftpBatchResult run(String operation, List<SftpFileTransfer> transfers, TransferTask task) {
+        long start = System.nanoTime();
+        List<SftpTransferOutcome> outcomes = new ArrayList<>(transfers.size());
+        if (transfers.isEmpty()) {
+            return new SftpBatchResult(outcomes, 0);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, transfers.size()), runnable -> {
+            Thread thread = new Thread(runnable, "sftp-bulk-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<SftpTransferOutcome>> futures = new ArrayList<>(transfers.size());
+            for (SftpFileTransfer transfer : transfers) {
+                futures.add(executor.submit(() -> execute(operation, transfer, task)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                outcomes.add(await(transfers.get(i), futures.get(i)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        SftpBatchResult result = new SftpBatchResult(outcomes, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        log.info("SFTP bulk " + operation + ": " + result);
+        return result;
+    }
+
+    private static SftpTransferOutcome execute(String operation, SftpFileTransfer transfer, TransferTask task) {
+        long start = System.nanoTime();
+        try {
+            long bytes = task.run(transfer);
+            long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            return bytes == NOT_FOUND
+                    ? new SftpTransferOutcome(transfer, false, 0, duration, null)
+                    : new SftpTransferOutcome(transfer, true, bytes, duration, null);
+        } catch (Exception e) {
+            log.error("SFTP " + operation + " failed for " + transfer + ": " + e.getMessage());
+            return new SftpTransferOutcome(transfer, false, 0, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), e);
+        }
+    }
+
+    private static SftpTransferOutcome await(SftpFileTransfer transfer, Future<SftpTransferOutcome> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new SftpTransferOutcome(transfer, false, 0, 0, e);
+        } catch (ExecutionException e) {
+            return new SftpTransferOutcome(transfer, false, 0, 0, e.getCause());
+        }
+    }
+
+    @FunctionalInterface
+    private interface TransferTask {
+        /**
+         * @return Bytes moved, or {@link #NOT_FOUND} when the remote file does not exist
+         */
+        long run(SftpFileTransfer transfer) throws Exception;
+    }
+}
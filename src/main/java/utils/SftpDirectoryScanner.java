@@ -0,0 +1,139 @@
+package utils;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpException;
+import lombok.extern.log4j.Log4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Scan a remote directory entry by entry with {@link ChannelSftp.LsEntrySelector}. Entries are filtered as they
+ * arrive and only the best ones are kept, so a directory with hundreds of thousands of files is never held
+ * in memory as a whole listing.
+ */
+@Log4j
+public class SftpDirectoryScanner {
+
+    private SftpDirectoryScanner() {
+    }
+
+    /**
+     * Filter on file name prefix and extension, "." and ".." are always skipped
+     *
+     * @param fileNamePrefix File name prefix
+     * @param fileExtension  File type, compared ignoring case
+     * @return Entry filter
+     */
+    public static Predicate<ChannelSftp.LsEntry> filter(String fileNamePrefix, FileExtension fileExtension) {
+        String extension = fileExtension.getExtension();
+        return entry -> {
+            String fileName = entry.getFilename();
+            return !".".equals(fileName) && !"..".equals(fileName)
+                    && fileName.startsWith(fileNamePrefix)
+                    && fileName.regionMatches(true, fileName.length() - extension.length(), extension, 0, extension.length());
+        };
+    }
+
+    /**
+     * Get the entry with the greatest key. The key is computed once per entry.
+     *
+     * @param channelSftp SFTP channel
+     * @param remoteDir   Remote directory
+     * @param filter      Entry filter
+     * @param key         Sort key
+     * @param <K>         Key type
+     * @return Entry with the greatest key, null when no entry matches
+     * @throws SftpException SFTP Exception
+     */
+    public static <K extends Comparable<? super K>> ChannelSftp.LsEntry latest(ChannelSftp channelSftp, String remoteDir,
+                                                                              Predicate<ChannelSftp.LsEntry> filter,
+                                                                              Function<ChannelSftp.LsEntry, K> key) throws SftpException {
+        List<ChannelSftp.LsEntry> top = top(channelSftp, remoteDir, filter, key, 1);
+        return top.isEmpty() ? null : top.get(0);
+    }
+
+    /**
+     * Get the greatest entry according to a comparator
+     *
+     * @param channelSftp SFTP channel
+     * @param remoteDir   Remote directory
+     * @param filter      Entry filter
+     * @param comparator  Entry comparator
+     * @return Greatest entry, null when no entry matches
+     * @throws SftpException SFTP Exception
+     */
+    public static ChannelSftp.LsEntry max(ChannelSftp channelSftp, String remoteDir, Predicate<ChannelSftp.LsEntry> filter,
+                                          Comparator<ChannelSftp.LsEntry> comparator) throws SftpException {
+        ChannelSftp.LsEntry[] max = new ChannelSftp.LsEntry[1];
+        int[] scanned = new int[2];
+        channelSftp.ls(remoteDir, entry -> {
+            scanned[0]++;
+            if (filter.test(entry)) {
+                scanned[1]++;
+                if (max[0] == null || comparator.compare(entry, max[0]) > 0) {
+                    max[0] = entry;
+                }
+            }
+            return ChannelSftp.LsEntrySelector.CONTINUE;
+        });
+        log.info(String.format("Scanned %d entries in %s, %d matched", scanned[0], remoteDir, scanned[1]));
+        return max[0];
+    }
+
+    /**
+     * Get the {@code k} entries with the greatest keys, greatest first. Keys are computed once per entry
+     * and at most {@code k} entries are kept while scanning.
+     *
+     * @param channelSftp SFTP channel
+     * @param remoteDir   Remote directory
+     * @param filter      Entry filter
+     * @param key         Sort key
+     * @param k           Number of entries to keep
+     * @param <K>         Key type
+     * @return Entries, greatest key first
+     * @throws SftpException SFTP Exception
+     */
+    public static <K extends Comparable<? super K>> List<ChannelSftp.LsEntry> top(ChannelSftp channelSftp, String remoteDir,
+                                                                                 Predicate<ChannelSftp.LsEntry> filter,
+                                                                                 Function<ChannelSftp.LsEntry, K> key,
+                                                                                 int k) throws SftpException {
+        PriorityQueue<Keyed<K>> heap = new PriorityQueue<>(k + 1, Comparator.comparing((Keyed<K> keyed) -> keyed.key));
+        int[] scanned = new int[2];
+        channelSftp.ls(remoteDir, entry -> {
+            scanned[0]++;
+            if (filter.test(entry)) {
+                scanned[1]++;
+                K entryKey = key.apply(entry);
+                if (heap.size() < k) {
+                    heap.add(new Keyed<>(entryKey, entry));
+                } else if (entryKey.compareTo(heap.peek().key) > 0) {
+                    heap.poll();
+                    heap.add(new Keyed<>(entryKey, entry));
+                }
+            }
+            return ChannelSftp.LsEntrySelector.CONTINUE;
+        });
+        log.info(String.format("Scanned %d entries in %s, %d matched", scanned[0], remoteDir, scanned[1]));
+
+        List<ChannelSftp.LsEntry> result = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            result.add(0, heap.poll().entry);
+        }
+        return result;
+    }
+
+    private static class Keyed<K> {
+        private final K key;
+        private final ChannelSftp.LsEntry entry;
+
+        private Keyed(K key, ChannelSftp.LsEntry entry) {
+            this.key = key;
+            this.entry = entry;
+        }
+    }
+}
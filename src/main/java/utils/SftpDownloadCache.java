@@ -0,0 +1,285 @@
+package utils;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpATTRS;
+import com.jcraft.jsch.SftpException;
+import lombok.extern.log4j.Log4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Persistent local cache of downloaded SFTP files, shared by test classes and by parallel test JVMs.
+ * <p>
+ * A remote file is identified by server, path, size and modification time. The identity points to an object
+ * named after the SHA-256 of its content, so identical files downloaded from different paths are stored once.
+ * Downloads go to a temporary file which is atomically moved into place, and file locks keep two JVMs from
+ * downloading the same file at the same time. The least recently used objects are deleted when the cache grows
+ * over its quota. An object evicted by another JVM before it could be copied is downloaded once more, then the file
+ * is downloaded without the cache.
+ * <p>
+ * The cache is opt-in with {@code -Dsftp.cache.enabled=true}: a miss writes the file twice, into the cache and to
+ * the local path, which only pays off when the same files are downloaded again, by later classes or other JVMs.
+ * Also configured with {@code -Dsftp.cache.dir} (default a folder in the temporary directory) and
+ * {@code -Dsftp.cache.maxBytes} (default 2 GB).
+ */
+@Log4j
+public class SftpDownloadCache {
+    public static final String ENABLED_VARIABLE = "sftp.cache.enabled";
+    public static final String DIR_VARIABLE = "sftp.cache.dir";
+    public static final String MAX_BYTES_VARIABLE = "sftp.cache.maxBytes";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int KEY_STRIPES = 64;
+    private static final int MAX_CACHED_COPY_ATTEMPTS = 2;
+    private static SftpDownloadCache instance;
+
+    private final Path objects;
+    private final Path index;
+    private final Path locks;
+    private final Path tmp;
+    private final long maxBytes;
+    private final Object[] keyMonitors = new Object[KEY_STRIPES];
+    private final Object evictionMonitor = new Object();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+
+    SftpDownloadCache(Path root, long maxBytes) throws IOException {
+        this.objects = Files.createDirectories(root.resolve("objects"));
+        this.index = Files.createDirectories(root.resolve("index"));
+        this.locks = Files.createDirectories(root.resolve("locks"));
+        this.tmp = Files.createDirectories(root.resolve("tmp"));
+        this.maxBytes = maxBytes;
+        for (int i = 0; i < KEY_STRIPES; i++) {
+            keyMonitors[i] = new Object();
+        }
+    }
+
+    public static synchronized SftpDownloadCache getInstance() throws IOException {
+        if (instance == null) {
+            Path root = Paths.get(System.getProperty(DIR_VARIABLE,
+                    Paths.get(System.getProperty("java.io.tmpdir"), "snakespring-sftp-cache").toString()));
+            instance = new SftpDownloadCache(root, Long.getLong(MAX_BYTES_VARIABLE, 2L * 1024 * 1024 * 1024));
+            log.info("SFTP download cache at " + root.toAbsolutePath());
+        }
+        return instance;
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(ENABLED_VARIABLE);
+    }
+
+    /**
+     * Copy a remote file to a local path, from the cache when the same version of the file was already downloaded
+     *
+     * @param channelSftp SFTP channel
+     * @param server      Server identifier, see {@link SftpMetadataCache#serverOf(SftpConfig)}
+     * @param remotePath  Remote file
+     * @param localPath   Local file to write
+     * @return Local file
+     * @throws SftpException SFTP Exception
+     * @throws IOException   IO Exception
+     */
+    public Path get(ChannelSftp channelSftp, String server, String remotePath, Path localPath) throws SftpException, IOException {
+        SftpATTRS attrs = channelSftp.stat(remotePath);
+        String key = Sha256.hex(server + "\n" + remotePath + "\n" + attrs.getSize() + "\n" + attrs.getMTime());
+
+        if (localPath.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(localPath.toAbsolutePath().getParent());
+        }
+        for (int attempt = 1; ; attempt++) {
+            Path object = this.cachedObject(channelSftp, remotePath, key, attrs.getSize());
+            try {
+                Files.copy(object, localPath, StandardCopyOption.REPLACE_EXISTING);
+                return localPath;
+            } catch (NoSuchFileException e) {
+                // Evicted by another JVM between the lookup and the copy
+                if (attempt >= MAX_CACHED_COPY_ATTEMPTS) {
+                    log.warn("Cached object of " + remotePath + " was evicted " + attempt
+                            + " times before it was copied, the cache is too small for its JVMs, downloading without it");
+                    channelSftp.get(remotePath, localPath.toString());
+                    return localPath;
+                }
+                log.info("Cached object of " + remotePath + " was evicted meanwhile, downloading it again");
+            }
+        }
+    }
+
+    private Path cachedObject(ChannelSftp channelSftp, String remotePath, String key, long size) throws SftpException, IOException {
+        Path object = this.lookup(key, size);
+        if (object != null) {
+            return object;
+        }
+        // A fixed set of monitors, keys sharing one only wait for each other's lookup or download
+        synchronized (keyMonitors[(key.hashCode() & Integer.MAX_VALUE) % KEY_STRIPES]) {
+            try (FileChannel lockChannel = FileChannel.open(locks.resolve(key + ".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock ignored = lockChannel.lock()) {
+                // Another JVM may have downloaded the file while this one waited for the lock
+                object = this.lookup(key, size);
+                if (object == null) {
+                    misses.incrementAndGet();
+                    object = this.download(channelSftp, remotePath, key);
+                    this.evict(object);
+                }
+                return object;
+            }
+        }
+    }
+
+    public String getStatistics() {
+        return String.format("hits=%d, misses=%d, evictions=%d, bytesServedFromCache=%d",
+                hits.get(), misses.get(), evictions.get(), bytesServed.get());
+    }
+
+    private Path lookup(String key, long size) throws IOException {
+        Path indexFile = index.resolve(key);
+        try {
+            String hash = new String(Files.readAllBytes(indexFile), StandardCharsets.UTF_8).trim();
+            Path object = objects.resolve(hash);
+            if (Files.size(object) == size) {
+                // The modification time of an object is its last use, for eviction
+                Files.setLastModifiedTime(object, FileTime.fromMillis(System.currentTimeMillis()));
+                hits.incrementAndGet();
+                bytesServed.addAndGet(size);
+                log.info("SFTP download cache hit for object " + hash);
+                return object;
+            }
+        } catch (NoSuchFileException e) {
+            // Not downloaded yet, or evicted
+        }
+        return null;
+    }
+
+    private Path download(ChannelSftp channelSftp, String remotePath, String key) throws SftpException, IOException {
+        MessageDigest digest = Sha256.newDigest();
+        Path download = Files.createTempFile(tmp, key, ".part");
+        try {
+            long start = System.currentTimeMillis();
+            try (InputStream in = channelSftp.get(remotePath);
+                 OutputStream out = new DigestOutputStream(Files.newOutputStream(download), digest)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            }
+            String hash = Sha256.toHex(digest.digest());
+            Path object = objects.resolve(hash);
+            if (!moveAtomically(download, object)) {
+                Files.setLastModifiedTime(object, FileTime.fromMillis(System.currentTimeMillis()));
+            }
+
+            Path indexTmp = Files.createTempFile(tmp, key, ".index");
+            Files.write(indexTmp, hash.getBytes(StandardCharsets.UTF_8));
+            Files.move(indexTmp, index.resolve(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            log.info("Downloaded " + remotePath + " into the SFTP download cache as " + hash + " in "
+                    + (System.currentTimeMillis() - start) + " ms");
+            return object;
+        } finally {
+            Files.deleteIfExists(download);
+        }
+    }
+
+    /**
+     * @return False when the target already exists, the source is then left in place
+     */
+    private static boolean moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        } catch (AtomicMoveNotSupportedException e) {
+            if (Files.exists(target)) {
+                return false;
+            }
+            Files.move(source, target);
+            return true;
+        } catch (IOException e) {
+            // Some file systems refuse to replace an existing file even with ATOMIC_MOVE
+            if (Files.exists(target)) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Delete the least recently used objects until the cache fits in its quota. Index entries of deleted
+     * objects are left behind and read as misses.
+     */
+    private void evict(Path keep) throws IOException {
+        synchronized (evictionMonitor) {
+            try (FileChannel lockChannel = FileChannel.open(locks.resolve("eviction.lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock ignored = lockChannel.lock()) {
+                List<Path> candidates;
+                try (Stream<Path> stream = Files.list(objects)) {
+                    candidates = stream.collect(Collectors.toCollection(ArrayList::new));
+                }
+                long total = 0;
+                List<CachedObject> cached = new ArrayList<>(candidates.size());
+                for (Path candidate : candidates) {
+                    try {
+                        CachedObject object = new CachedObject(candidate, Files.size(candidate), Files.getLastModifiedTime(candidate).toMillis());
+                        cached.add(object);
+                        total += object.size;
+                    } catch (NoSuchFileException e) {
+                        // Deleted meanwhile
+                    }
+                }
+                if (total <= maxBytes) {
+                    return;
+                }
+
+                cached.sort(Comparator.comparingLong(object -> object.lastUsed));
+                for (CachedObject object : cached) {
+                    if (total <= maxBytes) {
+                        break;
+                    }
+                    if (object.path.equals(keep)) {
+                        continue;
+                    }
+                    if (Files.deleteIfExists(object.path)) {
+                        evictions.incrementAndGet();
+                        log.info("Evicted " + object.path.getFileName() + " (" + object.size + " bytes) from the SFTP download cache");
+                    }
+                    total -= object.size;
+                }
+            }
+        }
+    }
+
+    private static class CachedObject {
+        private final Path path;
+        private final long size;
+        private final long lastUsed;
+
+        private CachedObject(Path path, long size, long lastUsed) {
+            this.path = path;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package utils;
+
+/**
+ * One file to move between the local disk and SFTP, or one remote file to delete or check
+ */
+public class SftpFileTransfer {
+    private final String source;
+    private final String destination;
+
+    public SftpFileTransfer(String source, String destination) {
+        this.source = source;
+        this.destination = destination;
+    }
+
+    public static SftpFileTransfer of(String source, String destination) {
+        return new SftpFileTransfer(source, destination);
+    }
+
+    /**
+     * Remote-only operation (delete, existence check) on a path
+     *
+     * @param remotePath Remote path
+     * @return Transfer with the remote path as source and no destination
+     */
+    public static SftpFileTransfer remote(String remotePath) {
+        return new SftpFileTransfer(remotePath, null);
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    @Override
+    public String toString() {
+        return destination == null ? source : source + " -> " + destination;
+    }
+}
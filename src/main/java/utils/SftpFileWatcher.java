@@ -0,0 +1,220 @@
+package utils;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.SftpATTRS;
+import com.jcraft.jsch.SftpException;
+import lombok.extern.log4j.Log4j;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Wait for files to appear or change on SFTP. The server is polled quickly at first, then less and less often
+ * up to a cap, and the wait returns as soon as the change is seen. A single pooled channel is held for the
+ * whole wait instead of connecting for every check.
+ * <p>
+ * Intervals are set with {@code -Dsftp.watch.initialIntervalMillis} (default 1s),
+ * {@code -Dsftp.watch.maxIntervalMillis} (default 30s) and {@code -Dsftp.watch.settleMillis} (default 1s),
+ * the time a file size must stay unchanged before the file is considered completely written.
+ */
+@Log4j
+public class SftpFileWatcher {
+    public static final String INITIAL_INTERVAL_VARIABLE = "sftp.watch.initialIntervalMillis";
+    public static final String MAX_INTERVAL_VARIABLE = "sftp.watch.maxIntervalMillis";
+    public static final String SETTLE_VARIABLE = "sftp.watch.settleMillis";
+    private static final double BACKOFF_MULTIPLIER = 2.0;
+
+    private final SFTP sftp;
+    private final long initialIntervalMillis;
+    private final long maxIntervalMillis;
+    private final long settleMillis;
+
+    public SftpFileWatcher(SFTP sftp) {
+        this(sftp, Long.getLong(INITIAL_INTERVAL_VARIABLE, 1000L), Long.getLong(MAX_INTERVAL_VARIABLE, 30000L),
+                Long.getLong(SETTLE_VARIABLE, 1000L));
+    }
+
+    /**
+     * @param sftp                  SFTP helper of the watched server
+     * @param initialIntervalMillis Delay before the second check
+     * @param maxIntervalMillis     Longest delay between two checks
+     * @param settleMillis          Time the size of a new file must stay unchanged, 0 to return immediately
+     */
+    public SftpFileWatcher(SFTP sftp, long initialIntervalMillis, long maxIntervalMillis, long settleMillis) {
+        this.sftp = sftp;
+        this.initialIntervalMillis = Math.max(1L, initialIntervalMillis);
+        this.maxIntervalMillis = Math.max(this.initialIntervalMillis, maxIntervalMillis);
+        this.settleMillis = Math.max(0L, settleMillis);
+    }
+
+    /**
+     * Wait for the latest matching file of a directory to have another modification time than the baseline
+     *
+     * @param remoteDir             Remote directory
+     * @param filter                Entry filter, see {@link SftpDirectoryScanner#filter(String, FileExtension)}
+     * @param baselineModifiedTime  Modification time string of the latest file before the export, empty if none
+     * @param timeoutMillis         Longest wait, including the time the file takes to be completely written
+     * @return New latest file with its attributes once its size settled, null when nothing changed or the file
+     * was still being written at the deadline
+     * @throws JSchException        JSCH Exception
+     * @throws SftpException        SFTP Exception
+     * @throws InterruptedException Interrupted Exception
+     */
+    public WatchedFile awaitNewFile(String remoteDir, Predicate<ChannelSftp.LsEntry> filter, String baselineModifiedTime,
+                                    long timeoutMillis) throws JSchException, SftpException, InterruptedException {
+        return this.await(timeoutMillis, "a new file in " + remoteDir, (channelSftp, deadline) -> {
+            ChannelSftp.LsEntry latest = SftpDirectoryScanner.latest(channelSftp, remoteDir, filter, (o) -> o.getAttrs().getMTime());
+            if (latest == null || latest.getAttrs().getMtimeString().equals(baselineModifiedTime)) {
+                return null;
+            }
+            if (settleMillis == 0) {
+                return new WatchedFile(latest.getFilename(), latest.getAttrs());
+            }
+            // The listing has the size and time of a file still being written, the settled ones come from a stat
+            SftpATTRS attrs = this.awaitStableSize(channelSftp, remoteDir + "/" + latest.getFilename(),
+                    latest.getAttrs().getSize(), deadline);
+            return attrs == null ? null : new WatchedFile(latest.getFilename(), attrs);
+        }, remoteDir);
+    }
+
+    /**
+     * Wait for a file whose name is known in advance, with a single stat per check instead of a listing
+     *
+     * @param remotePath           Remote file
+     * @param baselineModifiedTime Modification time in seconds before the export, or a negative value when the
+     *                             file is expected to be created
+     * @param timeoutMillis        Longest wait, including the time the file takes to be completely written
+     * @return Attributes of the new file, null when nothing changed or the file was still being written at the
+     * deadline
+     * @throws JSchException        JSCH Exception
+     * @throws SftpException        SFTP Exception
+     * @throws InterruptedException Interrupted Exception
+     */
+    public SftpATTRS awaitFile(String remotePath, int baselineModifiedTime, long timeoutMillis) throws JSchException, SftpException, InterruptedException {
+        return this.await(timeoutMillis, remotePath, (channelSftp, deadline) -> {
+            SftpATTRS attrs = stat(channelSftp, remotePath);
+            if (attrs == null || attrs.getMTime() == baselineModifiedTime) {
+                return null;
+            }
+            return this.awaitStableSize(channelSftp, remotePath, attrs.getSize(), deadline);
+        }, remotePath);
+    }
+
+    private <T> T await(long timeoutMillis, String target, Check<T> check, String changedPath) throws JSchException, SftpException, InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long interval = initialIntervalMillis;
+        int checks = 0;
+        SftpSessionPool pool = SftpSessionPool.getInstance();
+        ChannelSftp channelSftp = pool.borrow(sftp.getSftpConfig());
+        try {
+            while (true) {
+                checks++;
+                T result;
+                try {
+                    result = check.run(channelSftp, deadline);
+                } catch (SftpException e) {
+                    if (channelSftp.isConnected()) {
+                        throw e;
+                    }
+                    log.info("SFTP connection lost while waiting for " + target + ", reconnecting");
+                    pool.invalidate(channelSftp);
+                    channelSftp = null;
+                    channelSftp = pool.borrow(sftp.getSftpConfig());
+                    // Checked again after the usual delay, the deadline still applies
+                    result = null;
+                }
+
+                long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                if (result != null) {
+                    log.info("Found " + target + " after " + elapsed + " ms and " + checks + " check(s)");
+                    sftp.invalidateMetadataCache(changedPath);
+                    return result;
+                }
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    log.info("Nothing found for " + target + " after " + elapsed + " ms and " + checks + " check(s)");
+                    return null;
+                }
+                Thread.sleep(Math.min(interval, remaining));
+                interval = Math.min(maxIntervalMillis, (long) (interval * BACKOFF_MULTIPLIER));
+            }
+        } finally {
+            if (channelSftp != null) {
+                pool.release(channelSftp);
+            }
+        }
+    }
+
+    /**
+     * Wait until the size of a file being written stops changing
+     *
+     * @param deadline {@link System#nanoTime()} after which the wait gives up
+     * @return Attributes of the completely written file, null when it was removed or still growing at the deadline
+     */
+    private SftpATTRS awaitStableSize(ChannelSftp channelSftp, String remotePath, long size, long deadline) throws SftpException, InterruptedException {
+        SftpATTRS attrs = null;
+        long previousSize = size;
+        while (settleMillis > 0) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                log.info("File " + remotePath + " is still being written at the deadline, size = " + previousSize);
+                return null;
+            }
+            Thread.sleep(Math.min(settleMillis, remaining));
+            attrs = stat(channelSftp, remotePath);
+            if (attrs == null || attrs.getSize() == previousSize) {
+                break;
+            }
+            log.info("File " + remotePath + " is still being written, size = " + attrs.getSize());
+            previousSize = attrs.getSize();
+        }
+        return Objects.isNull(attrs) ? stat(channelSftp, remotePath) : attrs;
+    }
+
+    private static SftpATTRS stat(ChannelSftp channelSftp, String remotePath) throws SftpException {
+        try {
+            return channelSftp.stat(remotePath);
+        } catch (SftpException e) {
+            if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * File found by {@link #awaitNewFile(String, Predicate, String, long)}
+     */
+    public static class WatchedFile {
+        private final String filename;
+        private final SftpATTRS attrs;
+
+        WatchedFile(String filename, SftpATTRS attrs) {
+            this.filename = filename;
+            this.attrs = attrs;
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+
+        /**
+         * @return Attributes of the completely written file
+         */
+        public SftpATTRS getAttrs() {
+            return attrs;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Check<T> {
+        /**
+         * @param deadline {@link System#nanoTime()} at which the wait ends
+         * @return Result of the wait, null to check again later
+         */
+        T run(ChannelSftp channelSftp, long deadline) throws SftpException, InterruptedException;
+    }
+}
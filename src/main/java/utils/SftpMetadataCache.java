@@ -0,0 +1,181 @@
+package utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Short-lived cache of remote metadata (latest file of a directory, file existence) keyed by server and
+ * remote path, so repeated lookups in a test class do not go back to the server.
+ * <p>
+ * Entries expire after {@code -Dsftp.cache.metadataTtlMillis} (default 30s) and the least recently used
+ * entries are dropped above {@code -Dsftp.cache.metadataMaxEntries} (default 1000). Uploads and deletes
+ * done through {@link SFTP} invalidate the path and its parent directory. Empty results are not cached,
+ * so a file that is expected to appear is always looked up on the server.
+ */
+public class SftpMetadataCache {
+    public static final String TTL_VARIABLE = "sftp.cache.metadataTtlMillis";
+    public static final String MAX_ENTRIES_VARIABLE = "sftp.cache.metadataMaxEntries";
+    private static SftpMetadataCache instance;
+
+    private final long ttlMillis;
+    private final Map<Key, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    SftpMetadataCache(long ttlMillis, int maxEntries) {
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static synchronized SftpMetadataCache getInstance() {
+        if (instance == null) {
+            instance = new SftpMetadataCache(Long.getLong(TTL_VARIABLE, 30000L), Integer.getInteger(MAX_ENTRIES_VARIABLE, 1000));
+        }
+        return instance;
+    }
+
+    /**
+     * @param config SFTP configuration
+     * @return Identifier of the server and account the metadata belongs to
+     */
+    public static String serverOf(SftpConfig config) {
+        return config.getUsername() + "@" + config.getHost() + ":" + config.getPort();
+    }
+
+    /**
+     * Get a cached value, or load and cache it
+     *
+     * @param server     Server identifier, see {@link #serverOf(SftpConfig)}
+     * @param remotePath Remote path the value describes
+     * @param qualifier  Kind of lookup on the path, e.g. "stat" or "latest:prefix.zip"
+     * @param loader     Lookup on the server
+     * @param <T>        Value type
+     * @return Cached or loaded value
+     * @throws Exception Exception raised by the loader
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String server, String remotePath, String qualifier, Loader<T> loader) throws Exception {
+        Key key = new Key(server, normalize(remotePath), qualifier);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+                hits.incrementAndGet();
+                return (T) entry.value;
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+        }
+        misses.incrementAndGet();
+        T value = loader.load();
+        if (value != null) {
+            put(server, remotePath, qualifier, value);
+        }
+        return value;
+    }
+
+    public synchronized void put(String server, String remotePath, String qualifier, Object value) {
+        entries.put(new Key(server, normalize(remotePath), qualifier), new Entry(value, System.currentTimeMillis() + ttlMillis));
+    }
+
+    /**
+     * Drop what is known about a remote path and about the listing of its parent directory
+     *
+     * @param server     Server identifier
+     * @param remotePath Remote file or directory that changed
+     */
+    public synchronized void invalidate(String server, String remotePath) {
+        String path = normalize(remotePath);
+        int separator = path.lastIndexOf('/');
+        String parent = separator > 0 ? path.substring(0, separator) : "/";
+        Iterator<Key> iterator = entries.keySet().iterator();
+        while (iterator.hasNext()) {
+            Key key = iterator.next();
+            if (key.server.equals(server) && (key.path.equals(path) || key.path.equals(parent))) {
+                iterator.remove();
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        invalidations.addAndGet(entries.size());
+        entries.clear();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public String getStatistics() {
+        return String.format("hits=%d, misses=%d, evictions=%d, invalidations=%d, size=%d",
+                hits.get(), misses.get(), evictions.get(), invalidations.get(), size());
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static String normalize(String remotePath) {
+        String path = remotePath.replace('\\', '/').replaceAll("/{2,}", "/");
+        return path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    }
+
+    @FunctionalInterface
+    public interface Loader<T> {
+        T load() throws Exception;
+    }
+
+    private static class Entry {
+        private final Object value;
+        private final long expiresAt;
+
+        private Entry(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static class Key {
+        private final String server;
+        private final String path;
+        private final String qualifier;
+
+        private Key(String server, String path, String qualifier) {
+            this.server = server;
+            this.path = path;
+            this.qualifier = qualifier;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return server.equals(key.server) && path.equals(key.path) && qualifier.equals(key.qualifier);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(server, path, qualifier);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package utils;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpATTRS;
+import com.jcraft.jsch.SftpException;
+import lombok.extern.log4j.Log4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+
+/**
+ * Upload and download files so that a retry resumes from the bytes already transferred by the failed attempt
+ * instead of from zero. The SHA-256 of the whole file is computed while it is transferred, the part already present is
+ * read locally only, and every attempt reports its throughput.
+ * <p>
+ * Retries follow the {@link RetryPolicy} named {@code sftp.transfer}, e.g. {@code -Dsftp.transfer.maxAttempts=5}.
+ * A missing file or a denied permission is not retried.
+ */
+@Log4j
+public class SftpResumableTransfer {
+    public static final String PARTIAL_SUFFIX = ".part";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private SftpResumableTransfer() {
+    }
+
+    /**
+     * Upload a file, a retry appends to the remote file left incomplete by the failed attempt
+     *
+     * @param config     SFTP configuration
+     * @param localPath  Local file
+     * @param remotePath Remote file, or remote folder to upload into
+     * @return Transfer metrics
+     * @throws Exception Last error when every attempt failed
+     */
+    public static SftpTransferMetrics upload(SftpConfig config, String localPath, String remotePath) throws Exception {
+        Path local = Paths.get(localPath);
+        long localSize = Files.size(local);
+        String[] remoteFile = new String[1];
+        return run(config, localPath, remotePath, new long[]{localSize}, (channelSftp, monitorHolder, first) -> {
+            if (remoteFile[0] == null) {
+                SftpATTRS target = stat(channelSftp, remotePath);
+                remoteFile[0] = target != null && target.isDir() ? remotePath + "/" + local.getFileName() : remotePath;
+            }
+            SftpATTRS existing = stat(channelSftp, remoteFile[0]);
+            // A remote file found by the first attempt may be another version of the file, it is overwritten
+            long offset = first || existing == null || existing.getSize() > localSize ? 0 : existing.getSize();
+
+            MessageDigest digest = Sha256.newDigest();
+            SftpTransferMonitor monitor = monitorHolder.start(offset, localSize);
+            try (InputStream in = new DigestInputStream(Files.newInputStream(local), digest)) {
+                readFully(in, offset);
+                if (offset < localSize) {
+                    channelSftp.put(in, remoteFile[0], monitor, offset > 0 ? ChannelSftp.APPEND : ChannelSftp.OVERWRITE);
+                }
+            }
+
+            SftpATTRS uploaded = channelSftp.stat(remoteFile[0]);
+            if (uploaded.getSize() != localSize) {
+                throw new IOException("Uploaded " + uploaded.getSize() + " of " + localSize + " bytes to " + remoteFile[0]);
+            }
+            return new Attempt(offset, Sha256.toHex(digest.digest()));
+        });
+    }
+
+    /**
+     * Download a file through a partial file next to the target, which is kept after a failed attempt and
+     * completed by the retry. The partial file is moved to the target once complete.
+     *
+     * @param config     SFTP configuration
+     * @param remotePath Remote file
+     * @param localPath  Local file
+     * @return Transfer metrics
+     * @throws Exception Last error when every attempt failed
+     */
+    public static SftpTransferMetrics download(SftpConfig config, String remotePath, String localPath) throws Exception {
+        Path local = Paths.get(localPath).toAbsolutePath();
+        Path partial = Paths.get(localPath + PARTIAL_SUFFIX).toAbsolutePath();
+        Files.createDirectories(local.getParent());
+        int[] remoteMtime = new int[]{-1};
+        long[] remoteSize = new long[1];
+        return run(config, remotePath, localPath, remoteSize, (channelSftp, monitorHolder, first) -> {
+            SftpATTRS attrs = channelSftp.stat(remotePath);
+            remoteSize[0] = attrs.getSize();
+            if (first || remoteMtime[0] != attrs.getMTime()) {
+                // A partial file left by another run, or of another version of the remote file, cannot be completed
+                Files.deleteIfExists(partial);
+            }
+            remoteMtime[0] = attrs.getMTime();
+            long offset = Files.exists(partial) ? Files.size(partial) : 0;
+            if (offset > attrs.getSize()) {
+                Files.delete(partial);
+                offset = 0;
+            }
+
+            MessageDigest digest = Sha256.newDigest();
+            if (offset > 0) {
+                try (InputStream in = new DigestInputStream(Files.newInputStream(partial), digest)) {
+                    readFully(in, offset);
+                }
+            }
+            SftpTransferMonitor monitor = monitorHolder.start(offset, -1);
+            if (offset < attrs.getSize()) {
+                try (InputStream in = channelSftp.get(remotePath, monitor, offset);
+                     OutputStream out = Files.newOutputStream(partial, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        digest.update(buffer, 0, read);
+                        out.write(buffer, 0, read);
+                    }
+                }
+            } else if (!Files.exists(partial)) {
+                Files.createFile(partial);
+            }
+
+            long downloaded = Files.size(partial);
+            if (downloaded != attrs.getSize()) {
+                throw new IOException("Downloaded " + downloaded + " of " + attrs.getSize() + " bytes from " + remotePath);
+            }
+            try {
+                Files.move(partial, local, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(partial, local, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return new Attempt(offset, Sha256.toHex(digest.digest()));
+        });
+    }
+
+    /**
+     * @param fileSize Size of the file, filled by the task when only known once connected
+     */
+    private static SftpTransferMetrics run(SftpConfig config, String source, String destination, long[] fileSize,
+                                           AttemptTask task) throws Exception {
+        long start = System.currentTimeMillis();
+        MonitorHolder monitorHolder = new MonitorHolder();
+        long[] transferred = new long[1];
+        int[] attempts = new int[1];
+
+        try {
+            Attempt result = SftpSessionPool.retryPolicy("sftp.transfer", config)
+                    .retryOn(SftpSessionPool::isServerFailure).withSystemProperties()
+                    .call(() -> {
+                        boolean first = ++attempts[0] == 1;
+                        try {
+                            return (Attempt) SftpSessionPool.getInstance().execute(config, channelSftp -> task.run(channelSftp, monitorHolder, first));
+                        } finally {
+                            transferred[0] += monitorHolder.bytes();
+                        }
+                    });
+            SftpTransferMetrics metrics = new SftpTransferMetrics(source, destination, fileSize[0], transferred[0],
+                    result.offset, attempts[0], System.currentTimeMillis() - start, result.sha256);
+            log.info("SFTP transfer " + metrics);
+            return metrics;
+        } catch (Exception e) {
+            log.error("SFTP transfer " + source + " -> " + destination + " failed after " + attempts[0] + " attempt(s) and "
+                    + transferred[0] + " bytes: " + e.getMessage());
+            throw e;
+        }
+    }
+
+    private static SftpATTRS stat(ChannelSftp channelSftp, String remotePath) throws SftpException {
+        try {
+            return channelSftp.stat(remotePath);
+        } catch (SftpException e) {
+            if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Read and discard up to {@code length} bytes, so that they go through the digest
+     */
+    private static void readFully(InputStream in, long length) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long remaining = length;
+        int read;
+        while (remaining > 0 && (read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+            remaining -= read;
+        }
+    }
+
+    @FunctionalInterface
+    private interface AttemptTask {
+        Attempt run(ChannelSftp channelSftp, MonitorHolder monitorHolder, boolean first) throws Exception;
+    }
+
+    private static class Attempt {
+        /**
+         * Bytes already at the destination when the attempt started
+         */
+        private final long offset;
+        private final String sha256;
+
+        private Attempt(long offset, String sha256) {
+            this.offset = offset;
+            this.sha256 = sha256;
+        }
+    }
+
+    /**
+     * Monitor of the current attempt, still readable when the attempt failed
+     */
+    private static class MonitorHolder {
+        private SftpTransferMonitor monitor;
+
+        private SftpTransferMonitor start(long offset, long total) {
+            this.monitor = new SftpTransferMonitor(offset, total);
+            return monitor;
+        }
+
+        private long bytes() {
+            long bytes = monitor == null ? 0 : monitor.getBytes();
+            monitor = null;
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package utils;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpException;
+import lombok.extern.log4j.Log4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of connected SFTP channels per server and account, so an operation costs one SFTP round trip
+ * instead of a full SSH handshake and key exchange.
+ * <p>
+ * Each pooled entry is one SSH session with its SFTP channel. The number of sessions per key is capped by
+ * {@code -Dsftp.pool.maxSessions} (default 8), keep it at or below the server {@code MaxStartups} and
+ * {@code MaxSessions}. Sessions idle longer than {@code -Dsftp.pool.idleTimeoutMillis} are disconnected,
+ * and a session idle for more than a few seconds is checked with a {@code realpath} round trip before
+ * it is handed out again.
+ */
+@Log4j
+public class SftpSessionPool {
+    public static final String MAX_SESSIONS_VARIABLE = "sftp.pool.maxSessions";
+    public static final String IDLE_TIMEOUT_VARIABLE = "sftp.pool.idleTimeoutMillis";
+    public static final String BORROW_TIMEOUT_VARIABLE = "sftp.pool.borrowTimeoutMillis";
+    private static final long VALIDATE_AFTER_IDLE_MILLIS = 5000L;
+    private static SftpSessionPool instance;
+
+    private final int maxSessions;
+    private final long idleTimeoutMillis;
+    private final long borrowTimeoutMillis;
+    private final Map<SessionKey, KeyedPool> pools = new ConcurrentHashMap<>();
+    private final Map<ChannelSftp, PooledSession> leased = new ConcurrentHashMap<>();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private volatile boolean closed;
+
+    SftpSessionPool(int maxSessions, long idleTimeoutMillis, long borrowTimeoutMillis) {
+        this.maxSessions = maxSessions;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+    }
+
+    public static synchronized SftpSessionPool getInstance() {
+        if (instance == null) {
+            instance = new SftpSessionPool(Integer.getInteger(MAX_SESSIONS_VARIABLE, 8),
+                    Long.getLong(IDLE_TIMEOUT_VARIABLE, 60000L),
+                    Long.getLong(BORROW_TIMEOUT_VARIABLE, 120000L));
+            Runtime.getRuntime().addShutdownHook(new Thread(instance::close, "sftp-pool-shutdown"));
+        }
+        return instance;
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    /**
+     * Run the callback on a pooled channel. The channel goes back to the pool afterwards, unless the
+     * connection was lost during the call.
+     *
+     * @param config   SFTP configuration
+     * @param callback Callback
+     * @return Value returned by the callback
+     * @throws Exception Exception raised by the connection or the callback
+     */
+    public Object execute(SftpConfig config, SftpCallback callback) throws Exception {
+        ChannelSftp channel = borrow(config);
+        boolean healthy = true;
+        try {
+            return callback.execute(channel);
+        } catch (Exception e) {
+            healthy = !isConnectionLost(channel, e);
+            throw e;
+        } finally {
+            if (healthy) {
+                release(channel);
+            } else {
+                invalidate(channel);
+            }
+        }
+    }
+
+    /**
+     * Take a connected channel for the configuration, opening a session when none is idle
+     *
+     * @param config SFTP configuration
+     * @return Connected channel, to give back with {@link #release(ChannelSftp)}
+     * @throws JSchException When no session can be opened
+     */
+    public ChannelSftp borrow(SftpConfig config) throws JSchException {
+        if (closed) {
+            throw new IllegalStateException("SFTP session pool is already closed");
+        }
+        evictIdle();
+        SessionKey key = new SessionKey(config);
+        KeyedPool pool = pools.computeIfAbsent(key, k -> new KeyedPool(maxSessions));
+        try {
+            if (!pool.permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new JSchException("No SFTP session available for " + key + " after " + borrowTimeoutMillis + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JSchException("Interrupted while waiting for an SFTP session", e);
+        }
+
+        try {
+            PooledSession pooled;
+            while ((pooled = pool.idle.pollFirst()) != null) {
+                if (isAlive(pooled)) {
+                    reused.incrementAndGet();
+                    leased.put(pooled.channel, pooled);
+                    return pooled.channel;
+                }
+                disconnect(pooled);
+            }
+            pooled = open(key, pool);
+            leased.put(pooled.channel, pooled);
+            return pooled.channel;
+        } catch (JSchException | RuntimeException e) {
+            pool.permits.release();
+            throw e;
+        }
+    }
+
+    public void release(ChannelSftp channel) {
+        PooledSession pooled = leased.remove(channel);
+        if (pooled == null) {
+            return;
+        }
+        if (closed || !channel.isConnected()) {
+            disconnect(pooled);
+        } else {
+            pooled.lastUsed = System.currentTimeMillis();
+            pooled.pool.idle.offerFirst(pooled);
+        }
+        pooled.pool.permits.release();
+    }
+
+    /**
+     * Drop a channel whose session is broken instead of giving it back
+     *
+     * @param channel Borrowed channel
+     */
+    public void invalidate(ChannelSftp channel) {
+        PooledSession pooled = leased.remove(channel);
+        if (pooled != null) {
+            disconnect(pooled);
+            pooled.pool.permits.release();
+        }
+    }
+
+    /**
+     * Disconnect sessions that stayed idle longer than the idle timeout
+     */
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        for (KeyedPool pool : pools.values()) {
+            for (PooledSession pooled : pool.idle) {
+                if (now - pooled.lastUsed > idleTimeoutMillis && pool.idle.remove(pooled)) {
+                    evicted.incrementAndGet();
+                    disconnect(pooled);
+                }
+            }
+        }
+    }
+
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (KeyedPool pool : pools.values()) {
+            PooledSession pooled;
+            while ((pooled = pool.idle.pollFirst()) != null) {
+                disconnect(pooled);
+            }
+        }
+        pools.clear();
+        log.info("SFTP session pool closed: " + getStatistics());
+    }
+
+    public String getStatistics() {
+        int idle = pools.values().stream().mapToInt(pool -> pool.idle.size()).sum();
+        return String.format("created=%d, reused=%d, evicted=%d, leased=%d, idle=%d",
+                created.get(), reused.get(), evicted.get(), leased.size(), idle);
+    }
+
+    private PooledSession open(SessionKey key, KeyedPool pool) throws JSchException {
+        SftpConfig config = key.config;
+        JSch jSch = new JSch();
+        if (config.isUsePhysicalKey()) {
+            String pathFileKey = SFTP.PRIVATE_KEY_DIR + File.separator + "sftp_export_data_warehouse.ppk";
+            log.info("Private key path: " + pathFileKey);
+            jSch.addIdentity(pathFileKey);
+        } else if (config.getKeyContent() != null) {
+            jSch.addIdentity("private Key", config.getKeyContent().getBytes(), null, null);
+        }
+
+        String host = config.getHost();
+        int port = config.getPort();
+        if (EmbeddedSftpServer.isEnabled()) {
+            try {
+                host = "localhost";
+                port = EmbeddedSftpServer.getInstance().getPort();
+            } catch (IOException e) {
+                throw new JSchException("Cannot start the embedded SFTP server", e);
+            }
+        }
+
+        Session session = jSch.getSession(config.getUsername(), host, port);
+        if (!config.isUsePhysicalKey() && config.getKeyContent() == null && config.getPassword() != null) {
+            session.setPassword(config.getPassword());
+        }
+        session.setConfig("StrictHostKeyChecking", "no");
+        session.connect();
+        try {
+            ChannelSftp channel = (ChannelSftp) session.openChannel("sftp");
+            channel.connect();
+            created.incrementAndGet();
+            log.debug("Opened SFTP session to " + key);
+            return new PooledSession(pool, session, channel);
+        } catch (JSchException e) {
+            session.disconnect();
+            throw e;
+        }
+    }
+
+    private boolean isAlive(PooledSession pooled) {
+        if (!pooled.session.isConnected() || !pooled.channel.isConnected() || pooled.channel.isClosed()) {
+            return false;
+        }
+        if (System.currentTimeMillis() - pooled.lastUsed < VALIDATE_AFTER_IDLE_MILLIS) {
+            return true;
+        }
+        try {
+            pooled.channel.realpath(".");
+            return true;
+        } catch (SftpException e) {
+            log.info("Pooled SFTP session is not usable anymore: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Retry policy for operations on a server. Every policy of the same server shares one circuit breaker.
+     *
+     * @param name   Operation name, also the prefix of the system properties overriding the policy
+     * @param config SFTP configuration
+     * @return Retry policy, to be tuned by the caller before {@link RetryPolicy#withSystemProperties()}
+     */
+    public static RetryPolicy retryPolicy(String name, SftpConfig config) {
+        return RetryPolicy.named(name)
+                .circuitBreaker(CircuitBreaker.named("sftp " + SftpMetadataCache.serverOf(config)), SftpSessionPool::isServerFailure);
+    }
+
+    /**
+     * @param e Error of an SFTP operation
+     * @return False for errors answered by a working server, such as a missing file or a denied permission
+     */
+    static boolean isServerFailure(Throwable e) {
+        if (e instanceof SftpException) {
+            int id = ((SftpException) e).id;
+            return id != ChannelSftp.SSH_FX_NO_SUCH_FILE && id != ChannelSftp.SSH_FX_PERMISSION_DENIED;
+        }
+        return true;
+    }
+
+    private static boolean isConnectionLost(ChannelSftp channel, Exception e) {
+        if (!channel.isConnected() || e instanceof JSchException) {
+            return true;
+        }
+        if (e instanceof SftpException) {
+            int id = ((SftpException) e).id;
+            return id == ChannelSftp.SSH_FX_NO_CONNECTION || id == ChannelSftp.SSH_FX_CONNECTION_LOST;
+        }
+        return false;
+    }
+
+    private static void disconnect(PooledSession pooled) {
+        pooled.channel.disconnect();
+        pooled.session.disconnect();
+    }
+
+    private static class KeyedPool {
+        private final Semaphore permits;
+        private final Deque<PooledSession> idle = new ConcurrentLinkedDeque<>();
+
+        private KeyedPool(int maxSessions) {
+            this.permits = new Semaphore(maxSessions, true);
+        }
+    }
+
+    private static class PooledSession {
+        private final KeyedPool pool;
+        private final Session session;
+        private final ChannelSftp channel;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        private PooledSession(KeyedPool pool, Session session, ChannelSftp channel) {
+            this.pool = pool;
+            this.session = session;
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Sessions are shared only between configurations with the same server, account and credentials
+     */
+    private static class SessionKey {
+        private final SftpConfig config;
+        private final String host;
+        private final int port;
+        private final String username;
+        private final String password;
+        private final boolean usePhysicalKey;
+        private final String keyContent;
+
+        private SessionKey(SftpConfig config) {
+            this.config = config;
+            this.host = config.getHost();
+            this.port = config.getPort();
+            this.username = config.getUsername();
+            this.password = config.getPassword();
+            this.usePhysicalKey = config.isUsePhysicalKey();
+            this.keyContent = config.getKeyContent();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof SessionKey)) return false;
+            SessionKey that = (SessionKey) o;
+            return port == that.port && usePhysicalKey == that.usePhysicalKey && Objects.equals(host, that.host)
+                    && Objects.equals(username, that.username) && Objects.equals(password, that.password)
+                    && Objects.equals(keyContent, that.keyContent);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(host, port, username, password, usePhysicalKey, keyContent);
+        }
+
+        @Override
+        public String toString() {
+            return username + "@" + host + ":" + port;
+        }
+    }
+}
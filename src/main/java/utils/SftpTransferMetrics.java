@@ -0,0 +1,82 @@
+package utils;
+
+/**
+ * Result of a resumable SFTP transfer: what was moved, how fast, and the SHA-256 of the whole file
+ */
+public class SftpTransferMetrics {
+    private final String source;
+    private final String destination;
+    private final long fileSize;
+    private final long bytesTransferred;
+    private final long resumedFrom;
+    private final int attempts;
+    private final long durationMillis;
+    private final String sha256;
+
+    public SftpTransferMetrics(String source, String destination, long fileSize, long bytesTransferred, long resumedFrom,
+                               int attempts, long durationMillis, String sha256) {
+        this.source = source;
+        this.destination = destination;
+        this.fileSize = fileSize;
+        this.bytesTransferred = bytesTransferred;
+        this.resumedFrom = resumedFrom;
+        this.attempts = attempts;
+        this.durationMillis = durationMillis;
+        this.sha256 = sha256;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * @return Bytes sent over the network by all attempts, less than the file size when a transfer was resumed
+     */
+    public long getBytesTransferred() {
+        return bytesTransferred;
+    }
+
+    /**
+     * @return Offset the successful attempt resumed from, greater than 0 when a failed attempt left part of the file
+     */
+    public long getResumedFrom() {
+        return resumedFrom;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @return Wall-clock time of all attempts, including the delays between them
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public double getBytesPerSecond() {
+        return durationMillis == 0 ? bytesTransferred : bytesTransferred * 1000.0 / durationMillis;
+    }
+
+    /**
+     * @return Hex SHA-256 of the complete file, computed while it was transferred
+     */
+    public String getSha256() {
+        return sha256;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s -> %s: %d bytes, %d transferred (resumed from %d) in %d ms over %d attempt(s), %.1f KB/s, sha256=%s",
+                source, destination, fileSize, bytesTransferred, resumedFrom, durationMillis, attempts,
+                getBytesPerSecond() / 1024, sha256);
+    }
+}
@@ -0,0 +1,78 @@
+package utils;
+
+import com.jcraft.jsch.SftpProgressMonitor;
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Progress monitor of a single transfer attempt, logs progress every quarter of the file and measures throughput
+ */
+@Log4j
+public class SftpTransferMonitor implements SftpProgressMonitor {
+    private final long offset;
+    private long total;
+    private long bytes;
+    private long startNanos;
+    private long endNanos;
+    private int loggedQuarter;
+    private String description;
+
+    /**
+     * @param offset Bytes already transferred by previous attempts
+     */
+    public SftpTransferMonitor(long offset) {
+        this(offset, -1);
+    }
+
+    /**
+     * @param offset Bytes already transferred by previous attempts
+     * @param total  Size of the whole file, used when the transfer does not report it, as uploads from a stream
+     */
+    public SftpTransferMonitor(long offset, long total) {
+        this.offset = offset;
+        this.total = total;
+    }
+
+    @Override
+    public void init(int op, String src, String dest, long max) {
+        this.description = (op == PUT ? "upload " : "download ") + src + " -> " + dest;
+        if (max > 0) {
+            this.total = max;
+        }
+        this.startNanos = System.nanoTime();
+    }
+
+    @Override
+    public boolean count(long count) {
+        bytes += count;
+        if (total > 0) {
+            int quarter = (int) ((offset + bytes) * 4 / total);
+            if (quarter > loggedQuarter && quarter < 4) {
+                loggedQuarter = quarter;
+                log.info(String.format("SFTP %s: %d%% (%.1f KB/s)", description, quarter * 25, getBytesPerSecond() / 1024));
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void end() {
+        endNanos = System.nanoTime();
+    }
+
+    /**
+     * @return Bytes transferred by this attempt
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getDurationMillis() {
+        long end = endNanos == 0 ? System.nanoTime() : endNanos;
+        return startNanos == 0 ? 0 : (end - startNanos) / 1_000_000;
+    }
+
+    public double getBytesPerSecond() {
+        long duration = getDurationMillis();
+        return duration == 0 ? bytes : bytes * 1000.0 / duration;
+    }
+}
@@ -0,0 +1,52 @@
+package utils;
+
+/**
+ * Result of one file in a batch SFTP operation
+ */
+public class SftpTransferOutcome {
+    private final SftpFileTransfer transfer;
+    private final boolean success;
+    private final long bytes;
+    private final long durationMillis;
+    private final Throwable error;
+
+    public SftpTransferOutcome(SftpFileTransfer transfer, boolean success, long bytes, long durationMillis, Throwable error) {
+        this.transfer = transfer;
+        this.success = success;
+        this.bytes = bytes;
+        this.durationMillis = durationMillis;
+        this.error = error;
+    }
+
+    public SftpFileTransfer getTransfer() {
+        return transfer;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    /**
+     * @return Bytes moved, 0 for deletes and existence checks
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * @return Error raised for this file, null when there was none
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %s, %d bytes in %d ms%s", transfer, success ? "OK" : "FAILED", bytes,
+                durationMillis, error == null ? "" : " (" + error.getMessage() + ")");
+    }
+}
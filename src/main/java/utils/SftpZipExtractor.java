@@ -0,0 +1,133 @@
+package utils;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpException;
+import lombok.extern.log4j.Log4j;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Extract a remote zip archive while it is being downloaded. The archive is read from {@link ChannelSftp#get(String)}
+ * through a {@link ZipInputStream}, so it is never written to disk as a whole: only the selected entries are
+ * written, or handed to the caller as streams.
+ */
+@Log4j
+public class SftpZipExtractor {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private SftpZipExtractor() {
+    }
+
+    /**
+     * Filter on entry name extension, directories are always skipped
+     *
+     * @param fileExtension File type, compared ignoring case
+     * @return Entry filter
+     */
+    public static Predicate<ZipEntry> filter(FileExtension fileExtension) {
+        String extension = fileExtension.getExtension();
+        return entry -> {
+            String name = entry.getName();
+            return name.regionMatches(true, name.length() - extension.length(), extension, 0, extension.length());
+        };
+    }
+
+    /**
+     * Write the selected entries of a remote archive to a local folder, keeping their relative paths
+     *
+     * @param channelSftp SFTP channel
+     * @param remotePath  Remote zip file
+     * @param localDir    Local folder, created when missing
+     * @param filter      Entry filter
+     * @return Extracted files
+     * @throws SftpException SFTP Exception
+     * @throws IOException   IO Exception, also raised for entries escaping the local folder
+     */
+    public static List<Path> extract(ChannelSftp channelSftp, String remotePath, Path localDir, Predicate<ZipEntry> filter) throws SftpException, IOException {
+        Path root = Files.createDirectories(localDir).toAbsolutePath().normalize();
+        List<Path> extracted = new ArrayList<>();
+        forEach(channelSftp, remotePath, filter, (entry, content) -> {
+            Path target = root.resolve(entry.getName()).normalize();
+            if (!target.startsWith(root)) {
+                throw new IOException("Zip entry " + entry.getName() + " is outside of " + root);
+            }
+            if (target.getParent() != null) {
+                Files.createDirectories(target.getParent());
+            }
+            try (OutputStream out = Files.newOutputStream(target)) {
+                copy(content, out);
+            }
+            extracted.add(target);
+        });
+        log.info("Extracted " + extracted.size() + " file(s) of " + remotePath + " to " + root);
+        return extracted;
+    }
+
+    /**
+     * Hand the selected entries of a remote archive to the handler one after the other, as they are downloaded
+     *
+     * @param channelSftp SFTP channel
+     * @param remotePath  Remote zip file
+     * @param filter      Entry filter
+     * @param handler     Entry handler, the stream is only valid during the call and need not be closed
+     * @throws SftpException SFTP Exception
+     * @throws IOException   IO Exception
+     */
+    public static void forEach(ChannelSftp channelSftp, String remotePath, Predicate<ZipEntry> filter, EntryHandler handler) throws SftpException, IOException {
+        long start = System.currentTimeMillis();
+        int entries = 0;
+        try (ZipInputStream zip = new ZipInputStream(new BufferedInputStream(channelSftp.get(remotePath), BUFFER_SIZE))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (!entry.isDirectory() && filter.test(entry)) {
+                    entries++;
+                    handler.handle(entry, new EntryInputStream(zip));
+                }
+                zip.closeEntry();
+            }
+        }
+        log.info("Streamed " + entries + " entr(ies) of " + remotePath + " in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    @FunctionalInterface
+    public interface EntryHandler {
+        /**
+         * @param entry   Zip entry
+         * @param content Content of the entry
+         * @throws IOException IO Exception
+         */
+        void handle(ZipEntry entry, InputStream content) throws IOException;
+    }
+
+    /**
+     * Keeps a handler from closing the whole archive stream
+     */
+    private static class EntryInputStream extends FilterInputStream {
+        private EntryInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
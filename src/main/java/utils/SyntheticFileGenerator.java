@@ -0,0 +1,331 @@
+package utils;
+
+import com.google.gson.stream.JsonWriter;
+import lombok.extern.log4j.Log4j;
+
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Write large deterministic test files record by record, to a local file or straight into an SFTP upload.
+ * Only one record is held in memory at a time, whatever the size of the file.
+ * <pre>
+ * new SyntheticFileGenerator(SyntheticSchema.create().sequence("id", 1).text("name", 12))
+ *         .seed(42).targetBytes(5L * 1024 * 1024 * 1024).zip("visits.csv")
+ *         .upload(sftp, "/import/visits.zip");
+ * </pre>
+ */
+@Log4j
+public class SyntheticFileGenerator {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final SyntheticSchema schema;
+    private long seed;
+    private long records = Long.MAX_VALUE;
+    private long targetBytes = Long.MAX_VALUE;
+    private Format format = Format.CSV;
+    private String zipEntryName;
+
+    public SyntheticFileGenerator(SyntheticSchema schema) {
+        this.schema = schema;
+    }
+
+    /**
+     * @param seed Seed of the random values, the same seed gives the same file
+     */
+    public SyntheticFileGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * @param records Number of records to write
+     */
+    public SyntheticFileGenerator records(long records) {
+        this.records = records;
+        return this;
+    }
+
+    /**
+     * @param targetBytes Uncompressed size to reach, the last record may go slightly over it
+     */
+    public SyntheticFileGenerator targetBytes(long targetBytes) {
+        this.targetBytes = targetBytes;
+        return this;
+    }
+
+    public SyntheticFileGenerator format(Format format) {
+        this.format = format;
+        return this;
+    }
+
+    /**
+     * Compress the records on the fly into a zip archive with a single entry
+     *
+     * @param entryName Name of the file inside the archive
+     */
+    public SyntheticFileGenerator zip(String entryName) {
+        this.zipEntryName = entryName;
+        return this;
+    }
+
+    /**
+     * @param path Local file to write
+     * @return Generation statistics
+     * @throws IOException IO Exception
+     */
+    public Result writeTo(Path path) throws IOException {
+        if (path.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+        }
+        try (OutputStream out = Files.newOutputStream(path)) {
+            Result result = this.writeTo(out);
+            log.info("Generated " + path + ": " + result);
+            return result;
+        }
+    }
+
+    /**
+     * Upload the file while it is generated, nothing is written to local disk
+     *
+     * @param sftp       SFTP helper of the target server
+     * @param remotePath Remote file to write
+     * @return Generation statistics
+     * @throws Exception Exception
+     */
+    public Result upload(SFTP sftp, String remotePath) throws Exception {
+        Result result = (Result) sftp.execute(channelSftp -> {
+            try (OutputStream out = channelSftp.put(remotePath)) {
+                return this.writeTo(out);
+            }
+        });
+        sftp.invalidateMetadataCache(remotePath);
+        log.info("Generated " + remotePath + " on SFTP: " + result);
+        return result;
+    }
+
+    /**
+     * @param target Stream to write to, left open
+     * @return Generation statistics
+     * @throws IOException IO Exception
+     */
+    public Result writeTo(OutputStream target) throws IOException {
+        if (records == Long.MAX_VALUE && targetBytes == Long.MAX_VALUE) {
+            throw new IllegalStateException("Set the number of records or the target size of the file");
+        }
+        long start = System.currentTimeMillis();
+        CountingOutputStream written = new CountingOutputStream(target);
+        ZipOutputStream zip = null;
+        OutputStream content = written;
+        if (zipEntryName != null) {
+            zip = new ZipOutputStream(written);
+            zip.putNextEntry(new ZipEntry(zipEntryName));
+            content = zip;
+        }
+        CountingOutputStream uncompressed = new CountingOutputStream(content);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(uncompressed, StandardCharsets.UTF_8), BUFFER_SIZE);
+
+        SplittableRandom random = new SplittableRandom(seed);
+        List<SyntheticSchema.Field> fields = schema.getFields();
+        long count = 0;
+        if (format == Format.JSON_ARRAY) {
+            writer.write('[');
+        } else if (format == Format.CSV) {
+            writeCsvHeader(writer, fields);
+        }
+        while (count < records && !this.isTargetReached(writer, uncompressed)) {
+            if (format == Format.JSON_ARRAY && count > 0) {
+                writer.write(',');
+            }
+            if (format == Format.CSV) {
+                writeCsvRecord(writer, fields, count, random);
+            } else {
+                writeJsonRecord(writer, fields, count, random);
+            }
+            writer.write('\n');
+            count++;
+        }
+        if (format == Format.JSON_ARRAY) {
+            writer.write(']');
+        }
+        writer.flush();
+        if (zip != null) {
+            zip.closeEntry();
+            zip.finish();
+        }
+        written.flush();
+        return new Result(count, uncompressed.count, written.count, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * The byte count is only exact once the writer is flushed, which is done for every record only close to the
+     * target: the writer and its encoder buffer less than 4 buffers of bytes
+     */
+    private boolean isTargetReached(Writer writer, CountingOutputStream uncompressed) throws IOException {
+        if (targetBytes == Long.MAX_VALUE || uncompressed.count + 4L * BUFFER_SIZE < targetBytes) {
+            return false;
+        }
+        writer.flush();
+        return uncompressed.count >= targetBytes;
+    }
+
+    private static void writeCsvHeader(Writer writer, List<SyntheticSchema.Field> fields) throws IOException {
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writeCsvValue(writer, fields.get(i).getName());
+        }
+        writer.write('\n');
+    }
+
+    private static void writeCsvRecord(Writer writer, List<SyntheticSchema.Field> fields, long index, SplittableRandom random) throws IOException {
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            Object value = fields.get(i).next(index, random);
+            if (value != null) {
+                writeCsvValue(writer, value.toString());
+            }
+        }
+    }
+
+    private static void writeCsvValue(Writer writer, String value) throws IOException {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            writer.write(value);
+        } else {
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+    }
+
+    private static void writeJsonRecord(Writer writer, List<SyntheticSchema.Field> fields, long index, SplittableRandom random) throws IOException {
+        // A JsonWriter per record: closing it would close the file, and it refuses a second top-level value
+        JsonWriter json = new JsonWriter(new NonClosingWriter(writer));
+        json.beginObject();
+        for (SyntheticSchema.Field field : fields) {
+            json.name(field.getName());
+            Object value = field.next(index, random);
+            if (value == null) {
+                json.nullValue();
+            } else if (value instanceof Number) {
+                json.value((Number) value);
+            } else if (value instanceof Boolean) {
+                json.value((Boolean) value);
+            } else {
+                json.value(value.toString());
+            }
+        }
+        json.endObject();
+        json.flush();
+    }
+
+    public enum Format {
+        CSV, JSON_LINES, JSON_ARRAY
+    }
+
+    /**
+     * Statistics of a generated file
+     */
+    public static class Result {
+        private final long records;
+        private final long uncompressedBytes;
+        private final long writtenBytes;
+        private final long durationMillis;
+
+        private Result(long records, long uncompressedBytes, long writtenBytes, long durationMillis) {
+            this.records = records;
+            this.uncompressedBytes = uncompressedBytes;
+            this.writtenBytes = writtenBytes;
+            this.durationMillis = durationMillis;
+        }
+
+        public long getRecords() {
+            return records;
+        }
+
+        public long getUncompressedBytes() {
+            return uncompressedBytes;
+        }
+
+        /**
+         * @return Bytes written to the target, smaller than the uncompressed size when zipped
+         */
+        public long getWrittenBytes() {
+            return writtenBytes;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d records, %d bytes (%d written) in %d ms", records, uncompressedBytes, writtenBytes, durationMillis);
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    private static class NonClosingWriter extends Writer {
+        private final Writer writer;
+
+        private NonClosingWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            writer.write(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            writer.write(str, off, len);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
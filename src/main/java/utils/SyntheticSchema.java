@@ -0,0 +1,118 @@
+package utils;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Ordered fields of the records written by {@link SyntheticFileGenerator}. Every field draws its value from the
+ * record index and the generator random, so the same seed always gives the same records.
+ */
+public class SyntheticSchema {
+    private static final char[] ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".toCharArray();
+
+    private final List<Field> fields = new ArrayList<>();
+
+    public static SyntheticSchema create() {
+        return new SyntheticSchema();
+    }
+
+    /**
+     * @param name  Field name
+     * @param start Value of the first record, the next records count up from it
+     */
+    public SyntheticSchema sequence(String name, long start) {
+        return this.field(name, (index, random) -> start + index);
+    }
+
+    /**
+     * @param name   Field name
+     * @param length Number of random letters and digits
+     */
+    public SyntheticSchema text(String name, int length) {
+        return this.field(name, (index, random) -> {
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                chars[i] = ALPHABET[random.nextInt(ALPHABET.length)];
+            }
+            return new String(chars);
+        });
+    }
+
+    /**
+     * @param name Field name
+     * @param min  Smallest value
+     * @param max  Largest value, excluded
+     */
+    public SyntheticSchema integer(String name, long min, long max) {
+        return this.field(name, (index, random) -> random.nextLong(min, max));
+    }
+
+    /**
+     * @param name  Field name
+     * @param min   Smallest value
+     * @param max   Largest value, excluded
+     * @param scale Number of decimals
+     */
+    public SyntheticSchema decimal(String name, double min, double max, int scale) {
+        double factor = Math.pow(10, scale);
+        return this.field(name, (index, random) -> Math.round(random.nextDouble(min, max) * factor) / factor);
+    }
+
+    /**
+     * @param name Field name
+     * @param from First possible date
+     * @param to   Last possible date
+     */
+    public SyntheticSchema date(String name, LocalDate from, LocalDate to) {
+        long first = from.toEpochDay();
+        long last = to.toEpochDay();
+        return this.field(name, (index, random) -> LocalDate.ofEpochDay(random.nextLong(first, last + 1)).toString());
+    }
+
+    /**
+     * @param name   Field name
+     * @param values Possible values, picked uniformly
+     */
+    public SyntheticSchema choice(String name, String... values) {
+        return this.field(name, (index, random) -> values[random.nextInt(values.length)]);
+    }
+
+    /**
+     * @param name      Field name
+     * @param generator Value of a record, a String, a Number or a Boolean
+     */
+    public SyntheticSchema field(String name, ValueGenerator generator) {
+        fields.add(new Field(name, generator));
+        return this;
+    }
+
+    public List<Field> getFields() {
+        return Collections.unmodifiableList(fields);
+    }
+
+    @FunctionalInterface
+    public interface ValueGenerator {
+        Object next(long index, SplittableRandom random);
+    }
+
+    public static class Field {
+        private final String name;
+        private final ValueGenerator generator;
+
+        private Field(String name, ValueGenerator generator) {
+            this.name = name;
+            this.generator = generator;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Object next(long index, SplittableRandom random) {
+            return generator.next(index, random);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package utils;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Resumable transfers against the embedded SFTP server: the connection is dropped in the middle of the transfer and
+ * the retry must complete the file from where it stopped
+ */
+public class SftpResumableTransferTest {
+    private static final int FILE_SIZE = 1024 * 1024;
+
+    private Path folder;
+    private EmbeddedSftpServer server;
+    private SftpConfig config;
+    private byte[] content;
+
+    @BeforeClass
+    public void startServer() throws Exception {
+        folder = Files.createTempDirectory("sftp-resume-test");
+        server = EmbeddedSftpServer.start(folder.resolve("root"), 0, null);
+        server.setLatencyMillis(2);
+        // About 4 s per transfer, enough to drop the connection in the middle
+        server.setBytesPerSecond(256 * 1024);
+        config = new LocalSftpConfig(server.getPort());
+        content = new byte[FILE_SIZE];
+        new Random(42).nextBytes(content);
+        Files.createDirectories(server.resolve("/upload"));
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void stopServer() {
+        SftpSessionPool.getInstance().close();
+        server.close();
+    }
+
+    @Test
+    public void uploadResumesAfterConnectionLoss() throws Exception {
+        Path local = Files.write(folder.resolve("upload.bin"), content);
+        Path remote = server.resolve("/upload/upload.bin");
+        CompletableFuture<Integer> drop = dropConnectionsOnceLarger(remote, FILE_SIZE / 4);
+
+        SftpTransferMetrics metrics = SftpResumableTransfer.upload(config, local.toString(), "/upload");
+
+        assertTrue(drop.get(1, TimeUnit.SECONDS) > 0, "No connection was dropped");
+        assertEquals(metrics.getAttempts(), 2);
+        assertTrue(metrics.getResumedFrom() >= FILE_SIZE / 4, "Resumed from " + metrics.getResumedFrom());
+        assertEquals(metrics.getSha256(), Sha256.hex(content));
+        assertEquals(Files.readAllBytes(remote), content);
+    }
+
+    @Test
+    public void downloadResumesAfterConnectionLoss() throws Exception {
+        Files.write(server.resolve("/upload/download.bin"), content);
+        Path local = folder.resolve("download.bin");
+        CompletableFuture<Integer> drop = dropConnectionsOnceLarger(
+                folder.resolve("download.bin" + SftpResumableTransfer.PARTIAL_SUFFIX), FILE_SIZE / 4);
+
+        SftpTransferMetrics metrics = SftpResumableTransfer.download(config, "/upload/download.bin", local.toString());
+
+        assertTrue(drop.get(1, TimeUnit.SECONDS) > 0, "No connection was dropped");
+        assertEquals(metrics.getAttempts(), 2);
+        assertTrue(metrics.getResumedFrom() >= FILE_SIZE / 4, "Resumed from " + metrics.getResumedFrom());
+        assertEquals(metrics.getSha256(), Sha256.hex(content));
+        assertEquals(Files.readAllBytes(local), content);
+    }
+
+    private CompletableFuture<Integer> dropConnectionsOnceLarger(Path file, long size) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                while (!Files.exists(file) || Files.size(file) < size) {
+                    Thread.sleep(20);
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return server.disconnectAll();
+        });
+    }
+
+    private static class LocalSftpConfig extends SftpConfig {
+        private final int port;
+
+        private LocalSftpConfig(int port) {
+            this.port = port;
+        }
+
+        @Override
+        public String getHost() {
+            return "localhost";
+        }
+
+        @Override
+        public int getPort() {
+            return port;
+        }
+
+        @Override
+        public String getUsername() {
+            return "tester";
+        }
+
+        @Override
+        public String getPassword() {
+            return "any";
+        }
+
+        @Override
+        public boolean isUsePhysicalKey() {
+            return false;
+        }
+
+        @Override
+        public String getKeyContent() {
+            return null;
+        }
+    }
+}